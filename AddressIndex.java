@@ -0,0 +1,101 @@
+/**
+ * Indexes the nodes of a free list by the addresses at which their memory
+ * blocks start and end. This lets a memory space find, in constant time, the
+ * free neighbours of a block: the free block that ends where the block starts,
+ * and the free block that starts where the block ends.
+ * <p>
+ * Like the other free list indexes, a node must be removed from the index
+ * before its block is modified, and added back afterwards.
+ */
+public class AddressIndex {
+
+	// Maps the base address of each indexed block to its node
+	private IntHashMap<Node> byStart;
+
+	// Maps the end address (base address + length) of each indexed block to its node
+	private IntHashMap<Node> byEnd;
+
+	/**
+	 * Constructs a new, empty index.
+	 */
+	public AddressIndex() {
+		byStart = new IntHashMap<Node>();
+		byEnd = new IntHashMap<Node>();
+	}
+
+	/**
+	 * Gets the number of nodes in this index.
+	 *
+	 * @return the number of indexed nodes
+	 */
+	public int getSize() {
+		return byStart.size();
+	}
+
+	/**
+	 * Adds the given node to this index.
+	 *
+	 * @param node
+	 *             the free list node to be indexed
+	 */
+	public void add(Node node) {
+		byStart.put(node.block.baseAddress, node);
+		byEnd.put(node.block.baseAddress + node.block.length, node);
+	}
+
+	/**
+	 * Removes the given node from this index. Must be called before the
+	 * node's block is modified.
+	 *
+	 * @param node
+	 *             the free list node to be removed from the index
+	 */
+	public void remove(Node node) {
+		if (byStart.get(node.block.baseAddress) == node) {
+			byStart.remove(node.block.baseAddress);
+		}
+		int end = node.block.baseAddress + node.block.length;
+		if (byEnd.get(end) == node) {
+			byEnd.remove(end);
+		}
+	}
+
+	/**
+	 * Gets the node whose block starts at the given address.
+	 *
+	 * @param address
+	 *                the given address
+	 * @return the node, or null if no indexed block starts at the address
+	 */
+	public Node startingAt(int address) {
+		return byStart.get(address);
+	}
+
+	/**
+	 * Gets the node whose block ends at the given address, i.e. whose base
+	 * address plus length equals the address.
+	 *
+	 * @param address
+	 *                the given address
+	 * @return the node, or null if no indexed block ends at the address
+	 */
+	public Node endingAt(int address) {
+		return byEnd.get(address);
+	}
+
+	/**
+	 * Clears this index and re-indexes all the nodes of the given list.
+	 *
+	 * @param list
+	 *             the free list to index
+	 */
+	public void rebuild(LinkedList list) {
+		byStart.clear();
+		byEnd.clear();
+		ListIterator itr = list.iterator();
+		while (itr.hasNext()) {
+			add(itr.current);
+			itr.next();
+		}
+	}
+}
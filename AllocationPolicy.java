@@ -0,0 +1,54 @@
+/**
+ * Chooses the free block from which a memory space allocates a requested
+ * block. All the policies work on the same representation: the nodes of the
+ * memory space's freeList. A policy may keep its own index over these nodes,
+ * which the memory space keeps up to date by reporting every change to the
+ * freeList.
+ * <p>
+ * A policy instance holds the state of a single memory space, so each memory
+ * space must be constructed with its own instance.
+ */
+public interface AllocationPolicy {
+
+	/**
+	 * Finds the free node from which a block of the given length should be
+	 * allocated.
+	 * 
+	 * @param freeList
+	 *                 the free list of the memory space
+	 * @param length
+	 *                 the requested length, in words
+	 * @return a node whose block's length equals at least the given length, or
+	 *         null if the policy finds none
+	 */
+	Node find(LinkedList freeList, int length);
+
+	/**
+	 * Reports that the given node was added to the free list.
+	 * 
+	 * @param node
+	 *             the added node
+	 */
+	void add(Node node);
+
+	/**
+	 * Reports that the given node is about to be removed from the free list.
+	 * The node is still linked, and its block is unchanged.
+	 * 
+	 * @param node
+	 *             the node that is being removed
+	 */
+	void remove(Node node);
+
+	/**
+	 * Reports that the block of the given free node was moved or resized.
+	 * 
+	 * @param node
+	 *                       the node whose block changed
+	 * @param oldBaseAddress
+	 *                       the base address of the block before the change
+	 * @param oldLength
+	 *                       the length of the block before the change
+	 */
+	void resize(Node node, int oldBaseAddress, int oldLength);
+}
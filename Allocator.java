@@ -0,0 +1,29 @@
+/**
+ * The surface shared by the memory managers: blocks of words are allocated
+ * with malloc, recycled with free, and the free space can be defragmented.
+ */
+public interface Allocator {
+
+	/**
+	 * Allocates a memory block of a requested length (in words).
+	 * 
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the base address of the allocated block, or -1 if unable to allocate
+	 */
+	int malloc(int length);
+
+	/**
+	 * Frees the memory block whose base address equals the given address.
+	 * 
+	 * @param address
+	 *                the base address of the block to be freed
+	 */
+	void free(int address);
+
+	/**
+	 * Performs defragmantation of the free space.
+	 */
+	void defrag();
+}
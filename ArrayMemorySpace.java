@@ -0,0 +1,138 @@
+/**
+ * A first-fit memory space whose free list is a BlockArray: the free blocks
+ * are packed into longs and kept in a primitive array, rather than in linked
+ * nodes. Malloc and defrag thus scan the free list sequentially.
+ * <p>
+ * The allocated blocks are packed too, and kept in a primitive map from their
+ * base addresses. Once the array and the map have grown to the working set,
+ * malloc and free allocate no objects at all, so a steady stream of them
+ * produces no garbage.
+ * <p>
+ * The free list behaves exactly like the one of a first-fit MemorySpace: the
+ * same blocks are allocated, split, appended and merged in the same order.
+ * The allocated blocks are listed in no particular order.
+ */
+public class ArrayMemorySpace implements Allocator {
+
+	private int maxSize;                 // the size of the memory space
+	private BlockArray freeList;         // the free blocks, in free list order
+	private IntLongHashMap allocated;    // maps the base address of each allocated
+	                                     // block to the packed block
+
+	/**
+	 * Constructs a new managed memory space of a given maximal size.
+	 *
+	 * @param maxSize
+	 *                the size of the memory space to be managed
+	 */
+	public ArrayMemorySpace(int maxSize) {
+		this.maxSize = maxSize;
+		freeList = new BlockArray();
+		allocated = new IntLongHashMap();
+		freeList.addLast(0, maxSize);
+	}
+
+	/**
+	 * Gets the size of this memory space.
+	 *
+	 * @return the size of this memory space, in words
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Allocates a memory block of a requested length (in words), from the first
+	 * free block whose length equals at least the requested length.
+	 *
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the base address of the allocated block, or -1 if unable to allocate
+	 */
+	public int malloc(int length) {
+		int found = freeList.firstFit(length);
+		if (found == -1) {
+			return -1;
+		}
+		int baseAddress = freeList.baseAt(found);
+		int freeLength = freeList.lengthAt(found);
+		if (length == freeLength) {
+			freeList.remove(found);
+		} else {
+			freeList.set(found, baseAddress + length, freeLength - length);
+		}
+		allocated.put(baseAddress, MemoryBlock.pack(baseAddress, length));
+		return baseAddress;
+	}
+
+	/**
+	 * Frees the memory block whose base address equals the given address,
+	 * adding it at the end of the free list. Freeing an address that is not
+	 * allocated has no effect.
+	 *
+	 * @param address
+	 *                the base address of the block to be freed
+	 * @throws IllegalArgumentException
+	 *                                  if no block is allocated
+	 */
+	public void free(int address) {
+		if (allocated.size() == 0) {
+			throw new IllegalArgumentException(
+					"index must be between 0 and size");
+		}
+		// A packed block is never negative, since base addresses are not
+		long block = allocated.remove(address, -1);
+		if (block != -1) {
+			freeList.addLast(address, MemoryBlock.lengthOf(block));
+		}
+	}
+
+	/**
+	 * Performs defragmantation of this memory space. The free blocks are
+	 * ordered by base address with a radix sort, and each run of adjacent
+	 * blocks is merged into the block with the lowest address, which keeps its
+	 * position in the free list.
+	 */
+	public void defrag() {
+		int count = freeList.getSize();
+		if (count < 2) {
+			return;
+		}
+		int[] order = freeList.orderByAddress();
+		boolean merged = false;
+		int i = 0;
+		while (i < count) {
+			int start = order[i];
+			int baseAddress = freeList.baseAt(start);
+			int end = baseAddress + freeList.lengthAt(start);
+			int j = i + 1;
+			while (j < count && freeList.baseAt(order[j]) == end) {
+				end += freeList.lengthAt(order[j]);
+				// Marks the absorbed block, so that it is dropped below
+				freeList.set(order[j], freeList.baseAt(order[j]), -1);
+				j++;
+			}
+			if (j > i + 1) {
+				freeList.set(start, baseAddress, end - baseAddress);
+				merged = true;
+			}
+			i = j;
+		}
+		if (merged) {
+			freeList.removeMarked();
+		}
+	}
+
+	/**
+	 * A textual representation of the free list and the allocated list of this
+	 * memory space, for debugging purposes.
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder(freeList.toString()).append('\n');
+		for (long block : allocated.values()) {
+			BlockArray.appendBlock(str, block);
+		}
+		return str.toString();
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * Allocates from the smallest free block that is long enough. The free nodes
+ * are kept in a size index, so the block is found in logarithmic time.
+ */
+public class BestFitPolicy implements AllocationPolicy {
+
+	private SizeIndex index = new SizeIndex(); // the free nodes, ordered by length
+
+	@Override
+	public Node find(LinkedList freeList, int length) {
+		return index.bestFit(length);
+	}
+
+	@Override
+	public void add(Node node) {
+		index.add(node);
+	}
+
+	@Override
+	public void remove(Node node) {
+		index.remove(node.block.length, node.block.baseAddress);
+	}
+
+	@Override
+	public void resize(Node node, int oldBaseAddress, int oldLength) {
+		index.remove(oldLength, oldBaseAddress);
+		index.add(node);
+	}
+}
@@ -0,0 +1,123 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A trace sink that records the events of a memory space in a compact binary
+ * file, which TraceReplay can run against any allocator. The file starts with
+ * a magic number, followed by one record per event: an opcode byte, and then
+ * the operands as variable-length integers (seven bits per byte).
+ * <p>
+ * Every malloc call is numbered in order, and a free refers to the malloc
+ * that returned its address, by the distance back to that call, rather than
+ * to the address itself. A replay therefore frees the same blocks even when
+ * the allocator under test places them at other addresses. Frees of addresses
+ * that are not allocated have no effect, and are not recorded.
+ * <p>
+ * Blocks moved by compact are followed to their new addresses, so their later
+ * frees are recorded too. A move is not recorded itself: it does not change
+ * which blocks are allocated, and a replay refers to blocks by malloc number.
+ */
+public class BinaryTraceRecorder implements TraceSink, Closeable {
+
+	static final int MAGIC = 0x4D545231; // "MTR1", identifies a trace file
+	static final int MALLOC = 0;          // opcode; operand: the length
+	static final int FREE = 1;            // opcode; operand: the malloc distance
+	static final int DEFRAG = 2;          // opcode; no operand
+
+	private DataOutputStream out;         // buffers the records written to the file
+	private int mallocCount;              // the number of the next malloc call
+	private IntHashMap<Integer> mallocs;  // the number of the malloc that returned
+	                                      // each allocated address
+
+	/**
+	 * Constructs a new recorder, which creates (or truncates) the given file.
+	 *
+	 * @param file
+	 *             the file to which the trace is written
+	 * @throws IOException
+	 *                     if the file cannot be opened for writing
+	 */
+	public BinaryTraceRecorder(Path file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+		out.writeInt(MAGIC);
+		mallocs = new IntHashMap<Integer>();
+	}
+
+	@Override
+	public void malloc(int length, int address) {
+		if (address != -1) {
+			mallocs.put(address, mallocCount);
+		}
+		mallocCount++;
+		write(MALLOC, length);
+	}
+
+	@Override
+	public void free(int address) {
+		Integer number = mallocs.remove(address);
+		if (number != null) {
+			write(FREE, mallocCount - number);
+		}
+	}
+
+	@Override
+	public void defrag() {
+		try {
+			out.writeByte(DEFRAG);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void relocate(int from, int to) {
+		// The moves come in increasing address order, so the new address is
+		// never the key of a block that has yet to move
+		Integer number = mallocs.remove(from);
+		if (number != null) {
+			mallocs.put(to, number);
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 *
+	 * @throws IOException
+	 *                     if the file cannot be written
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Flushes the buffered records, and closes the file.
+	 *
+	 * @throws IOException
+	 *                     if the file cannot be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	// Writes a record; the trace callbacks cannot throw checked exceptions
+	private void write(int opcode, int operand) {
+		try {
+			out.writeByte(opcode);
+			// Writes the operand seven bits at a time, low bits first, setting
+			// the high bit of each byte but the last
+			while ((operand & ~0x7F) != 0) {
+				out.writeByte((operand & 0x7F) | 0x80);
+				operand >>>= 7;
+			}
+			out.writeByte(operand);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * A list of memory blocks stored in a primitive array, instead of as linked
+ * nodes that each point to a MemoryBlock object. Each block is packed into a
+ * single long, as encoded by MemoryBlock.pack, so its base address and length
+ * are read together. Adding a block allocates nothing, except when the array
+ * is full and is grown by doubling, and scanning the list reads the array
+ * sequentially.
+ * <p>
+ * Blocks are referred to by their index in the list. Removing a block shifts
+ * the blocks that follow it, so the list keeps its order, like LinkedList.
+ */
+public class BlockArray {
+
+	private long[] blocks; // the packed blocks
+	private int size;      // the number of blocks in the list
+
+	/**
+	 * Constructs a new, empty list.
+	 */
+	public BlockArray() {
+		blocks = new long[16];
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of blocks in this list.
+	 *
+	 * @return the number of blocks
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the block at the given index.
+	 *
+	 * @param index
+	 *              the index of the block
+	 * @return the block, packed as by MemoryBlock.pack
+	 */
+	public long blockAt(int index) {
+		return blocks[index];
+	}
+
+	/**
+	 * Gets the base address of the block at the given index.
+	 *
+	 * @param index
+	 *              the index of the block
+	 * @return the base address of the block
+	 */
+	public int baseAt(int index) {
+		return MemoryBlock.baseOf(blocks[index]);
+	}
+
+	/**
+	 * Gets the length of the block at the given index.
+	 *
+	 * @param index
+	 *              the index of the block
+	 * @return the length of the block
+	 */
+	public int lengthAt(int index) {
+		return MemoryBlock.lengthOf(blocks[index]);
+	}
+
+	/**
+	 * Adds a block at the end of this list.
+	 *
+	 * @param baseAddress
+	 *                    the base address of the block
+	 * @param length
+	 *                    the length of the block
+	 */
+	public void addLast(int baseAddress, int length) {
+		if (size == blocks.length) {
+			blocks = java.util.Arrays.copyOf(blocks, 2 * size);
+		}
+		blocks[size++] = MemoryBlock.pack(baseAddress, length);
+	}
+
+	/**
+	 * Replaces the block at the given index.
+	 *
+	 * @param index
+	 *                    the index of the block
+	 * @param baseAddress
+	 *                    the new base address of the block
+	 * @param length
+	 *                    the new length of the block
+	 */
+	public void set(int index, int baseAddress, int length) {
+		blocks[index] = MemoryBlock.pack(baseAddress, length);
+	}
+
+	/**
+	 * Removes the block at the given index, shifting the blocks that follow it.
+	 *
+	 * @param index
+	 *              the index of the block
+	 * @throws IllegalArgumentException
+	 *                                  if index is negative or greater than or
+	 *                                  equal to size
+	 */
+	public void remove(int index) {
+		if (index < 0 || index >= size) {
+			throw new IllegalArgumentException(
+					"index must be between 0 and size");
+		}
+		System.arraycopy(blocks, index + 1, blocks, index, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * Removes all the blocks whose length is negative, in a single pass,
+	 * keeping the order of the other blocks. A negative length can thus mark
+	 * blocks for removal, without shifting the list once per block.
+	 *
+	 * @return the number of removed blocks
+	 */
+	public int removeMarked() {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (MemoryBlock.lengthOf(blocks[i]) >= 0) {
+				blocks[kept++] = blocks[i];
+			}
+		}
+		int removed = size - kept;
+		size = kept;
+		return removed;
+	}
+
+	/**
+	 * Finds the first block whose length equals at least the given length.
+	 *
+	 * @param length
+	 *               the requested length, in words
+	 * @return the index of the first fitting block, or -1 if no block is long
+	 *         enough
+	 */
+	public int firstFit(int length) {
+		for (int i = 0; i < size; i++) {
+			if (MemoryBlock.lengthOf(blocks[i]) >= length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Computes the order of the blocks of this list by base address.
+	 *
+	 * @return the indexes of the blocks, from the lowest base address to the
+	 *         highest
+	 */
+	public int[] orderByAddress() {
+		int[] bases = new int[size];
+		for (int i = 0; i < size; i++) {
+			bases[i] = MemoryBlock.baseOf(blocks[i]);
+		}
+		return RadixSort.order(bases, size);
+	}
+
+	/**
+	 * A textual representation of this list, for debugging. The text has the
+	 * same form as the one of LinkedList.
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder(16 * size);
+		for (int i = 0; i < size; i++) {
+			appendBlock(str, blocks[i]);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Appends the textual representation of a packed block, as it appears in
+	 * the text of a list, to the given string.
+	 *
+	 * @param str
+	 *              the string to which the block is appended
+	 * @param block
+	 *              the block, packed as by MemoryBlock.pack
+	 */
+	static void appendBlock(StringBuilder str, long block) {
+		str.append('(').append(MemoryBlock.baseOf(block)).append(" , ")
+				.append(MemoryBlock.lengthOf(block)).append(") ");
+	}
+}
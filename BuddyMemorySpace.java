@@ -0,0 +1,246 @@
+/**
+ * A managed memory space that allocates blocks with the binary buddy system.
+ * Every block has a power-of-two length, and is aligned to its length. A
+ * request is rounded up to the next power of two, and is served from the free
+ * list of that order, splitting a larger block in halves when needed. When a
+ * block is freed, it is merged with its buddy (the other half of the block it
+ * was split from) for as long as the buddy is free too. Both operations take
+ * O(log maxSize) steps, and free blocks are always fully merged, so defrag has
+ * nothing to do.
+ * <p>
+ * The free blocks of each order are kept in a doubly linked list, whose
+ * links are kept in a primitive map per order, from the base address of each
+ * free block, so the buddy of a block is checked and unlinked in O(1). The
+ * requested length of each allocated block is kept in another map. The
+ * bookkeeping thus grows with the number of blocks, rather than with the size
+ * of the managed space.
+ * <p>
+ * Since requests are rounded up, part of each block may be wasted. This
+ * internal fragmentation is tracked, so it can be compared with the external
+ * fragmentation of the list-based memory space.
+ */
+public class BuddyMemorySpace implements Allocator {
+
+	// The number of orders; a block of order k has a length of 2^k words
+	private static final int ORDERS = 31;
+
+	private int maxSize;        // the size of the managed memory space
+	private int[] freeHead;     // the first free block of each order, or -1
+	private int nonEmptyOrders; // bit k is set if and only if order k has free blocks
+	private IntLongHashMap[] freeLinks; // per order, maps each free block to its
+	                                    // packed next and previous free blocks
+	private IntLongHashMap requested;   // maps each allocated block to the packed
+	                                    // block of its requested length
+	private int allocatedCount; // the number of allocated blocks
+	private long requestedWords; // the total requested length of the allocated blocks
+	private long allocatedWords; // the total rounded length of the allocated blocks
+
+	/**
+	 * Constructs a new buddy memory space of a given maximal size.
+	 * The space is split into the largest aligned power-of-two blocks that
+	 * fit, so a size which is not a power of two is fully used.
+	 * 
+	 * @param maxSize
+	 *                the size of the memory space to be managed
+	 */
+	public BuddyMemorySpace(int maxSize) {
+		this.maxSize = maxSize;
+		freeHead = new int[ORDERS];
+		java.util.Arrays.fill(freeHead, -1);
+		freeLinks = new IntLongHashMap[ORDERS];
+		for (int k = 0; k < ORDERS; k++) {
+			freeLinks[k] = new IntLongHashMap();
+		}
+		requested = new IntLongHashMap();
+		int address = 0;
+		while (address < maxSize) {
+			int order = 31 - Integer.numberOfLeadingZeros(maxSize - address);
+			push(address, order);
+			address += 1 << order;
+		}
+	}
+
+	/**
+	 * Allocates a memory block of a requested length (in words). The length is
+	 * rounded up to a power of two, and the block is taken from the smallest
+	 * order that has a free block, splitting it down to the rounded length.
+	 * 
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the base address of the allocated block, or -1 if unable to allocate
+	 */
+	public int malloc(int length) {
+		if (length <= 0 || length > maxSize) {
+			return -1;
+		}
+		int order = orderOf(length);
+		int available = nonEmptyOrders & (-1 << order);
+		if (available == 0) {
+			return -1;
+		}
+		int k = Integer.numberOfTrailingZeros(available);
+		int address = freeHead[k];
+		unlink(address, k);
+		// Splits the block, keeping the lower half and freeing the upper half
+		while (k > order) {
+			k--;
+			push(address + (1 << k), k);
+		}
+		requested.put(address, MemoryBlock.pack(address, length));
+		allocatedCount++;
+		requestedWords += length;
+		allocatedWords += 1 << order;
+		return address;
+	}
+
+	/**
+	 * Frees the memory block whose base address equals the given address, and
+	 * merges it with its free buddies. Freeing an address that is not allocated
+	 * has no effect.
+	 * 
+	 * @param address
+	 *                the base address of the block to be freed
+	 * @throws IllegalArgumentException
+	 *                                  if no block is allocated
+	 */
+	public void free(int address) {
+		if (allocatedCount == 0) {
+			throw new IllegalArgumentException(
+					"index must be between 0 and size");
+		}
+		// A packed block is never negative, since base addresses are not
+		long block = requested.remove(address, -1);
+		if (block == -1) {
+			return;
+		}
+		int length = MemoryBlock.lengthOf(block);
+		int order = orderOf(length);
+		allocatedCount--;
+		requestedWords -= length;
+		allocatedWords -= 1 << order;
+		while (order < ORDERS - 1) {
+			int buddy = address ^ (1 << order);
+			if (buddy + (1 << order) > maxSize || freeLinks[order].get(buddy, -1) == -1) {
+				break;
+			}
+			unlink(buddy, order);
+			address = Math.min(address, buddy);
+			order++;
+		}
+		push(address, order);
+	}
+
+	/**
+	 * Does nothing, since freed blocks are always merged with their buddies.
+	 */
+	public void defrag() {
+	}
+
+	/**
+	 * Gets the total length (in words) requested by the allocated blocks.
+	 * 
+	 * @return the requested words
+	 */
+	public long getRequestedWords() {
+		return requestedWords;
+	}
+
+	/**
+	 * Gets the total length (in words) of the allocated blocks, after rounding
+	 * up to powers of two.
+	 * 
+	 * @return the allocated words
+	 */
+	public long getAllocatedWords() {
+		return allocatedWords;
+	}
+
+	/**
+	 * Gets the internal fragmentation of this memory space: the fraction of the
+	 * allocated words that were not requested, and are wasted by rounding.
+	 * 
+	 * @return the internal fragmentation, between 0 and 1
+	 */
+	public double getInternalFragmentation() {
+		if (allocatedWords == 0) {
+			return 0;
+		}
+		return (double) (allocatedWords - requestedWords) / allocatedWords;
+	}
+
+	/**
+	 * A textual representation of the free blocks and the allocated blocks of
+	 * this memory space, for debugging purposes. The free blocks are listed by
+	 * order, and the allocated blocks by address, with their rounded lengths.
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		for (int k = 0; k < ORDERS; k++) {
+			for (int address = freeHead[k]; address != -1; address = nextOf(freeLinks[k].get(address, -1))) {
+				str.append('(').append(address).append(" , ").append(1 << k).append(") ");
+			}
+		}
+		str.append('\n');
+		// Packed blocks are ordered by base address
+		long[] blocks = requested.values();
+		java.util.Arrays.sort(blocks);
+		for (long block : blocks) {
+			str.append('(').append(MemoryBlock.baseOf(block)).append(" , ")
+					.append(1 << orderOf(MemoryBlock.lengthOf(block))).append(") ");
+		}
+		return str.toString();
+	}
+
+	// Adds a free block of the given order at the head of its free list
+	private void push(int address, int order) {
+		IntLongHashMap links = freeLinks[order];
+		int head = freeHead[order];
+		links.put(address, links(head, -1));
+		if (head != -1) {
+			links.put(head, links(nextOf(links.get(head, -1)), address));
+		}
+		freeHead[order] = address;
+		nonEmptyOrders |= 1 << order;
+	}
+
+	// Removes a free block of the given order from its free list
+	private void unlink(int address, int order) {
+		IntLongHashMap links = freeLinks[order];
+		long removed = links.remove(address, -1);
+		int next = nextOf(removed);
+		int prev = prevOf(removed);
+		if (prev == -1) {
+			freeHead[order] = next;
+		} else {
+			links.put(prev, links(next, prevOf(links.get(prev, -1))));
+		}
+		if (next != -1) {
+			links.put(next, links(nextOf(links.get(next, -1)), prev));
+		}
+		if (freeHead[order] == -1) {
+			nonEmptyOrders &= ~(1 << order);
+		}
+	}
+
+	// Packs the next and previous free blocks of a free block into a long,
+	// shifting them by one so that the packed links are never negative
+	private static long links(int next, int prev) {
+		return ((long) (next + 1) << 32) | (prev + 1);
+	}
+
+	// Returns the next free block in the given packed links, or -1
+	private static int nextOf(long links) {
+		return (int) (links >>> 32) - 1;
+	}
+
+	// Returns the previous free block in the given packed links, or -1
+	private static int prevOf(long links) {
+		return (int) links - 1;
+	}
+
+	// Returns the smallest order whose blocks can hold the given length
+	private static int orderOf(int length) {
+		return 32 - Integer.numberOfLeadingZeros(length - 1);
+	}
+}
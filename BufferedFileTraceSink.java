@@ -0,0 +1,80 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A trace sink that writes each event as a line of text to a file, through
+ * a buffer. The lines have the forms "malloc length address", "free address",
+ * "defrag" and "relocate from to". The sink must be closed to flush the buffered events.
+ */
+public class BufferedFileTraceSink implements TraceSink, Closeable {
+
+	private BufferedWriter writer; // buffers the lines written to the file
+
+	/**
+	 * Constructs a new sink, which creates (or truncates) the given file.
+	 * 
+	 * @param file
+	 *             the file to which the events are written
+	 * @throws IOException
+	 *                     if the file cannot be opened for writing
+	 */
+	public BufferedFileTraceSink(Path file) throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public void malloc(int length, int address) {
+		write("malloc " + length + " " + address);
+	}
+
+	@Override
+	public void free(int address) {
+		write("free " + address);
+	}
+
+	@Override
+	public void defrag() {
+		write("defrag");
+	}
+
+	@Override
+	public void relocate(int from, int to) {
+		write("relocate " + from + " " + to);
+	}
+
+	/**
+	 * Writes the buffered events to the file.
+	 * 
+	 * @throws IOException
+	 *                     if the file cannot be written
+	 */
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Flushes the buffered events, and closes the file.
+	 * 
+	 * @throws IOException
+	 *                     if the file cannot be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	// Writes a line; the trace callbacks cannot throw checked exceptions
+	private void write(String line) {
+		try {
+			writer.write(line);
+			writer.newLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe managed memory space. The address space is partitioned into
+ * stripes, each of which is a separate memory space guarded by its own lock,
+ * so threads that allocate and free blocks in different stripes proceed in
+ * parallel.
+ * <p>
+ * Each thread is assigned a home stripe, in round-robin order, from which its
+ * blocks are allocated. When the home stripe cannot satisfy a request, the
+ * other stripes are tried in turn. A block is freed into the stripe that holds
+ * its address, whichever thread frees it. Since a block never spans stripes,
+ * the longest block that can be allocated is the length of a stripe.
+ */
+public class ConcurrentMemorySpace implements Allocator {
+
+	private MemorySpace[] stripes;  // the memory spaces of the stripes
+	private ReentrantLock[] locks;  // the lock of each stripe
+	private int stripeSize;         // the length of each stripe but the last one
+	private AtomicInteger nextHome; // the home stripe of the next new thread
+	private ThreadLocal<Integer> home; // the home stripe of each thread
+
+	/**
+	 * Constructs a new concurrent memory space of a given maximal size, with the
+	 * given number of first-fit stripes.
+	 *
+	 * @param maxSize
+	 *                    the size of the memory space to be managed
+	 * @param stripeCount
+	 *                    the number of independently locked stripes
+	 */
+	public ConcurrentMemorySpace(int maxSize, int stripeCount) {
+		this(maxSize, stripeCount, FirstFitPolicy::new);
+	}
+
+	/**
+	 * Constructs a new concurrent memory space of a given maximal size, with the
+	 * given number of stripes. The stripes are of equal length, except for the
+	 * last one, which also holds the remainder of the division.
+	 *
+	 * @param maxSize
+	 *                    the size of the memory space to be managed
+	 * @param stripeCount
+	 *                    the number of independently locked stripes
+	 * @param policies
+	 *                    creates the allocation policy of each stripe
+	 * @throws IllegalArgumentException
+	 *                                  if the stripe count is not positive, or
+	 *                                  exceeds the size
+	 */
+	public ConcurrentMemorySpace(int maxSize, int stripeCount, Supplier<AllocationPolicy> policies) {
+		if (stripeCount < 1 || stripeCount > Math.max(maxSize, 1)) {
+			throw new IllegalArgumentException("stripe count must be between 1 and size");
+		}
+		stripeSize = maxSize / stripeCount;
+		stripes = new MemorySpace[stripeCount];
+		locks = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			int length = (i == stripeCount - 1) ? maxSize - i * stripeSize : stripeSize;
+			stripes[i] = new MemorySpace(length, policies.get());
+			locks[i] = new ReentrantLock();
+		}
+		nextHome = new AtomicInteger();
+		home = ThreadLocal.withInitial(() -> nextHome.getAndIncrement() % stripeCount);
+	}
+
+	/**
+	 * Gets the number of stripes of this memory space.
+	 *
+	 * @return the stripe count
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Allocates a memory block of a requested length (in words), from the home
+	 * stripe of the calling thread, or, if it cannot, from another stripe.
+	 *
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the base address of the allocated block, or -1 if unable to allocate
+	 */
+	public int malloc(int length) {
+		int first = home.get();
+		for (int i = 0; i < stripes.length; i++) {
+			int stripe = (first + i) % stripes.length;
+			int address;
+			locks[stripe].lock();
+			try {
+				address = stripes[stripe].malloc(length);
+			} finally {
+				locks[stripe].unlock();
+			}
+			if (address != -1) {
+				return stripe * stripeSize + address;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees the memory block whose base address equals the given address,
+	 * returning it to the stripe that holds the address.
+	 *
+	 * @param address
+	 *                the base address of the block to be freed
+	 * @throws IllegalArgumentException
+	 *                                  if the address is outside this memory
+	 *                                  space, or no block is allocated in its
+	 *                                  stripe
+	 */
+	public void free(int address) {
+		if (address < 0) {
+			throw new IllegalArgumentException("address must be between 0 and size");
+		}
+		int stripe = Math.min(address / Math.max(stripeSize, 1), stripes.length - 1);
+		locks[stripe].lock();
+		try {
+			stripes[stripe].free(address - stripe * stripeSize);
+		} finally {
+			locks[stripe].unlock();
+		}
+	}
+
+	/**
+	 * Performs a bounded part of the defragmentation of each stripe in turn,
+	 * holding only the lock of the stripe being worked on. Unlike defrag, this
+	 * holds each lock only briefly, so it can be called periodically from a
+	 * background thread without stalling the threads that allocate.
+	 *
+	 * @param steps
+	 *              the most free blocks to examine in each stripe
+	 * @return the number of merges performed
+	 * @see MemorySpace#defragStep(int)
+	 */
+	public int defragStep(int steps) {
+		int merges = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				merges += stripes[i].defragStep(steps);
+			} finally {
+				locks[i].unlock();
+			}
+		}
+		return merges;
+	}
+
+	/**
+	 * Performs defragmantation of each stripe in turn, holding only the lock of
+	 * the stripe being defragmented.
+	 */
+	public void defrag() {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				stripes[i].defrag();
+			} finally {
+				locks[i].unlock();
+			}
+		}
+	}
+}
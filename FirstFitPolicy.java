@@ -0,0 +1,27 @@
+/**
+ * Allocates from the first free block that is long enough, scanning the free
+ * list from its head. This is the default policy of a memory space.
+ */
+public class FirstFitPolicy implements AllocationPolicy {
+
+	@Override
+	public Node find(LinkedList freeList, int length) {
+		ListIterator itr = freeList.iterator();
+		while (itr.hasNext() && itr.current.block.length < length) {
+			itr.next();
+		}
+		return itr.current;
+	}
+
+	@Override
+	public void add(Node node) {
+	}
+
+	@Override
+	public void remove(Node node) {
+	}
+
+	@Override
+	public void resize(Node node, int oldBaseAddress, int oldLength) {
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Maps handles to the current base addresses of allocated blocks. A client
+ * that refers to a block through its handle, rather than its address, can
+ * still find the block after the memory space compacts and moves it.
+ * Handles are small ints, and the handles of freed blocks are reused.
+ */
+public class HandleTable {
+
+	// The address that marks an unused handle
+	private static final int UNUSED = -1;
+
+	private int[] addresses;   // the address of the block of each handle, or UNUSED
+	private int used;          // the number of handles ever issued (the high-water mark)
+	private int[] freeHandles; // the handles that are unused and below the mark
+	private int freeCount;     // the number of such handles
+	private int size;          // the number of handles in use
+
+	/**
+	 * Constructs a new, empty handle table.
+	 */
+	public HandleTable() {
+		addresses = new int[16];
+		freeHandles = new int[16];
+	}
+
+	/**
+	 * Gets the number of handles in use.
+	 *
+	 * @return the size of this table
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Issues a handle for the block at the given address.
+	 *
+	 * @param address
+	 *                the base address of the block
+	 * @return the new handle
+	 */
+	public int add(int address) {
+		int handle;
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else {
+			if (used == addresses.length) {
+				addresses = java.util.Arrays.copyOf(addresses, 2 * used);
+			}
+			handle = used++;
+		}
+		addresses[handle] = address;
+		size++;
+		return handle;
+	}
+
+	/**
+	 * Gets the current base address of the block of the given handle.
+	 *
+	 * @param handle
+	 *               the given handle
+	 * @throws IllegalArgumentException
+	 *                                  if the handle is not in use
+	 * @return the base address of the block
+	 */
+	public int get(int handle) {
+		if (handle < 0 || handle >= used || addresses[handle] == UNUSED) {
+			throw new IllegalArgumentException("handle is not in use");
+		}
+		return addresses[handle];
+	}
+
+	/**
+	 * Releases the given handle, so it can be reused.
+	 *
+	 * @param handle
+	 *               the handle to be released
+	 * @throws IllegalArgumentException
+	 *                                  if the handle is not in use
+	 */
+	public void remove(int handle) {
+		get(handle);
+		addresses[handle] = UNUSED;
+		if (freeCount == freeHandles.length) {
+			freeHandles = java.util.Arrays.copyOf(freeHandles, 2 * freeCount);
+		}
+		freeHandles[freeCount++] = handle;
+		size--;
+	}
+
+	/**
+	 * Updates the handles of blocks that moved. The old addresses must be
+	 * sorted in ascending order, and each one is replaced by the new address at
+	 * the same index. Handles of addresses that are not listed are unchanged.
+	 *
+	 * @param oldAddresses
+	 *                     the sorted addresses of the blocks before they moved
+	 * @param newAddresses
+	 *                     the addresses of the blocks after they moved
+	 * @param count
+	 *                     the number of moved blocks
+	 */
+	public void relocate(int[] oldAddresses, int[] newAddresses, int count) {
+		for (int handle = 0; handle < used; handle++) {
+			if (addresses[handle] != UNUSED) {
+				int i = java.util.Arrays.binarySearch(oldAddresses, 0, count, addresses[handle]);
+				if (i >= 0) {
+					addresses[handle] = newAddresses[i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * A hash map from int keys to non-null values, implemented with open
+ * addressing and linear probing over parallel arrays, so keys are never
+ * boxed. Removal shifts the following entries of the probe sequence back,
+ * so no tombstones are left behind and lookups stay fast under churn.
+ *
+ * @param <V> the type of the mapped values
+ */
+public class IntHashMap<V> {
+
+	// The smallest capacity of the tables; always a power of two
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;     // the keys of the entries
+	private Object[] values; // the values of the entries; null marks an empty slot
+	private int size;       // the number of entries in this map
+
+	/**
+	 * Constructs a new, empty map.
+	 */
+	public IntHashMap() {
+		keys = new int[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of entries in this map.
+	 *
+	 * @return the size of this map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the value mapped to the given key.
+	 *
+	 * @param key
+	 *            the given key
+	 * @return the mapped value, or null if the key is not in this map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Maps the given key to the given value.
+	 *
+	 * @param key
+	 *              the given key
+	 * @param value
+	 *              the value to be mapped to the key
+	 * @throws IllegalArgumentException
+	 *                                  if the value is null
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("value must not be null");
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (2 * size > keys.length) {
+			resize(2 * keys.length);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the given key from this map.
+	 *
+	 * @param key
+	 *            the key to be removed
+	 * @return the value that was mapped to the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (values[i] == null) {
+			return null;
+		}
+		V old = (V) values[i];
+		// Shifts back the entries that would become unreachable through the gap
+		int gap = i;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		values[gap] = null;
+		size--;
+		return old;
+	}
+
+	/**
+	 * Removes all the entries of this map.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(values, null);
+		size = 0;
+	}
+
+	// Re-inserts all the entries into tables of the given capacity
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]) & mask;
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	// Spreads the bits of the key, since addresses are often multiples of a size
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * A hash map from int keys to long values, such as packed memory blocks. Like
+ * IntHashMap, it uses open addressing and linear probing over parallel
+ * arrays, and shifts entries back on removal; but its values are primitive
+ * too, so once the tables are large enough, putting and removing entries
+ * allocates nothing.
+ */
+public class IntLongHashMap {
+
+	// The smallest capacity of the tables; always a power of two
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;       // the keys of the entries
+	private long[] values;    // the values of the entries
+	private boolean[] used;   // marks the slots that hold an entry
+	private int size;         // the number of entries in this map
+
+	/**
+	 * Constructs a new, empty map.
+	 */
+	public IntLongHashMap() {
+		keys = new int[MIN_CAPACITY];
+		values = new long[MIN_CAPACITY];
+		used = new boolean[MIN_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of entries in this map.
+	 *
+	 * @return the size of this map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the value mapped to the given key.
+	 *
+	 * @param key
+	 *                the given key
+	 * @param missing
+	 *                the value to return if the key is not in this map
+	 * @return the mapped value, or missing if the key is not in this map
+	 */
+	public long get(int key, long missing) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Maps the given key to the given value, replacing any previous value.
+	 *
+	 * @param key
+	 *              the given key
+	 * @param value
+	 *              the value to be mapped to the key
+	 */
+	public void put(int key, long value) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		used[i] = true;
+		size++;
+		if (2 * size > keys.length) {
+			resize(2 * keys.length);
+		}
+	}
+
+	/**
+	 * Removes the given key from this map.
+	 *
+	 * @param key
+	 *                the key to be removed
+	 * @param missing
+	 *                the value to return if the key is not in this map
+	 * @return the value that was mapped to the key, or missing if there was none
+	 */
+	public long remove(int key, long missing) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (used[i] && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (!used[i]) {
+			return missing;
+		}
+		long old = values[i];
+		// Shifts back the entries that would become unreachable through the gap
+		int gap = i;
+		for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		used[gap] = false;
+		size--;
+		return old;
+	}
+
+	/**
+	 * Gets the values of this map, in no particular order.
+	 *
+	 * @return a new array holding the values
+	 */
+	public long[] values() {
+		long[] result = new long[size];
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				result[count++] = values[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all the entries of this map.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(used, false);
+		size = 0;
+	}
+
+	// Re-inserts all the entries into tables of the given capacity
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new int[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldUsed[j]) {
+				int i = hash(oldKeys[j]) & mask;
+				while (used[i]) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				used[i] = true;
+			}
+		}
+	}
+
+	// Spreads the bits of the key, since addresses are often multiples of a size
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,11 +1,12 @@
 /**
- * Represents a list of Nodes.
+ * Represents a doubly linked list of Nodes.
  */
 public class LinkedList {
 
 	private Node first; // pointer to the first element of this list
 	private Node last; // pointer to the last element of this list
 	private int size; // number of elements in this list
+	private NodePool pool; // supplies the new nodes of this list, or null
 
 	/**
 	 * Constructs a new list.
@@ -16,6 +17,19 @@ public class LinkedList {
 		size = 0;
 	}
 
+	/**
+	 * Constructs a new list, which takes its new nodes from the given pool.
+	 * Removed nodes are not recycled by the list; the caller recycles them
+	 * once it no longer refers to them.
+	 * 
+	 * @param pool
+	 *             the pool that supplies the nodes of this list
+	 */
+	public LinkedList(NodePool pool) {
+		this();
+		this.pool = pool;
+	}
+
 	/**
 	 * Gets the first node of the list
 	 * 
@@ -58,6 +72,14 @@ public class LinkedList {
 			throw new IllegalArgumentException(
 					"index must be between 0 and size");
 		}
+		// Walks from the nearer end of the list
+		if (index > size / 2 && index < size) {
+			Node current = this.last;
+			for (int i = size - 1; i > index; i--) {
+				current = current.prev;
+			}
+			return current;
+		}
 		ListIterator itr = this.iterator();
 		for (int i = 0; i < index; i++) {
 			itr.next();
@@ -86,14 +108,19 @@ public class LinkedList {
 	 *                                  list's size
 	 */
 	public void add(int index, MemoryBlock block) {
-		Node newNode = new Node(block);
+		Node newNode = (pool == null) ? new Node(block) : pool.obtain(block);
+		newNode.list = this;
 		if (index == 0) {
 			newNode.next = this.first;
+			if (this.first != null) {
+				this.first.prev = newNode;
+			}
 			this.first = newNode;
 			if (size == 0) {
 				this.last = this.first;
 			}
 		} else if (index == size) {
+			newNode.prev = this.last;
 			this.last.next = newNode;
 			this.last = newNode;
 		} else {
@@ -104,6 +131,10 @@ public class LinkedList {
 				}
 			}
 			newNode.next = itr.current.next;
+			newNode.prev = itr.current;
+			if (itr.current.next != null) {
+				itr.current.next.prev = newNode;
+			}
 			itr.current.next = newNode;
 		}
 		size++;
@@ -169,26 +200,55 @@ public class LinkedList {
 
 	/**
 	 * Removes the given node from this list.
+	 * <p>
+	 * If the given node is linked into this list, it is unlinked in O(1) time,
+	 * through its previous and next nodes. Otherwise, the first node that
+	 * points to an equal memory block is searched for and removed.
 	 * 
 	 * @param node
 	 *             the node that will be removed from this list
 	 */
 	public void remove(Node node) {
+		if (contains(node)) {
+			unlink(node);
+			return;
+		}
 		ListIterator itr = this.iterator();
-		if (this.first.block.equals(node.block)) {
-			this.first = this.first.next;
-			if (this.first == null) {
-				this.last = first;
-			}
+		while (!itr.current.block.equals(node.block)) {
+			itr.next();
+		}
+		unlink(itr.current);
+	}
+
+	/**
+	 * Checks, in O(1) time, if the given node is linked into this list. Each
+	 * node records the list that it is linked into, so a node of another list,
+	 * or a node that was removed from this list, is not linked, even if it
+	 * still points to its former neighbours.
+	 * 
+	 * @param node
+	 *             the given node
+	 * @return true if the node is linked into this list, false otherwise
+	 */
+	public boolean contains(Node node) {
+		return node.list == this;
+	}
+
+	// Unlinks the given node, which must be linked into this list. The node
+	// keeps its next pointer, so that an iterator positioned on it can proceed.
+	private void unlink(Node node) {
+		if (node.prev == null) {
+			this.first = node.next;
 		} else {
-			while (!itr.current.next.block.equals(node.block)) {
-				itr.next();
-			}
-			itr.current.next = itr.current.next.next;
-			if (itr.current.next == null) {
-				this.last = itr.current;
-			}
+			node.prev.next = node.next;
 		}
+		if (node.next == null) {
+			this.last = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.list = null;
 		this.size--;
 	}
 
@@ -235,6 +295,39 @@ public class LinkedList {
 		}
 	}
 
+	/**
+	 * Removes from this list, in a single pass, every node whose memory block
+	 * satisfies the given filter. The remaining nodes keep their order.
+	 * 
+	 * @param filter
+	 *               selects the memory blocks that should be removed
+	 * @return the number of removed nodes
+	 */
+	public int removeIf(java.util.function.Predicate<MemoryBlock> filter) {
+		int removed = 0;
+		Node previous = null;
+		Node current = this.first;
+		while (current != null) {
+			if (filter.test(current.block)) {
+				if (previous == null) {
+					this.first = current.next;
+				} else {
+					previous.next = current.next;
+				}
+				current.prev = null;
+				current.list = null;
+				removed++;
+			} else {
+				current.prev = previous;
+				previous = current;
+			}
+			current = current.next;
+		}
+		this.last = previous;
+		this.size -= removed;
+		return removed;
+	}
+
 	/**
 	 * Returns an iterator over this list, starting with the first element.
 	 */
@@ -246,12 +339,32 @@ public class LinkedList {
 	 * A textual representation of this list, for debugging.
 	 */
 	public String toString() {
+		StringBuilder str = new StringBuilder(16 * size);
+		try {
+			writeTo(str);
+		} catch (java.io.IOException e) {
+			// A StringBuilder never throws
+			throw new java.io.UncheckedIOException(e);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Writes the textual representation of this list to the given output,
+	 * one block at a time, without building the whole text in memory.
+	 * The written text is the same as the one returned by toString.
+	 * 
+	 * @param out
+	 *            the output to which the text is written
+	 * @throws java.io.IOException
+	 *                             if the output cannot be written
+	 */
+	public void writeTo(Appendable out) throws java.io.IOException {
 		ListIterator itr = this.iterator();
-		String str = "";
 		while (itr.hasNext()) {
-			str += "(" + itr.current.block.baseAddress + " , " + itr.current.block.length + ") ";
-			itr.next();
+			MemoryBlock block = itr.next();
+			out.append('(').append(Integer.toString(block.baseAddress)).append(" , ")
+					.append(Integer.toString(block.length)).append(") ");
 		}
-		return str;
 	}
 }
\ No newline at end of file
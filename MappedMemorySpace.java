@@ -0,0 +1,224 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent memory space, whose words live in a memory-mapped file, and
+ * whose free and allocated blocks are saved in the same file. Reopening the
+ * file restores the exact state of the memory space, as of the last sync or
+ * close, by reading the saved blocks, without replaying any history; the
+ * words of the allocated blocks are accessed in place, through the mapping.
+ * <p>
+ * The file starts with a fixed header, which records the size of the memory
+ * space, and the number and position of the saved blocks, followed by the
+ * words of the memory space, followed by the saved blocks, as (base address,
+ * length) pairs: first the free blocks and then the allocated blocks, each in
+ * list order. Words written to the mapping reach the file on their own, but
+ * the blocks are only saved by sync and close.
+ * <p>
+ * Sync never overwrites the saved blocks that the header refers to. It writes
+ * the new blocks to another region of the file, forces them to the storage
+ * device, and only then switches the header to them, in a single write that
+ * fits in one disk sector. A crash during sync thus leaves either the old or
+ * the new blocks in effect, never a mix of the two.
+ */
+public class MappedMemorySpace extends OffHeapMemorySpace implements Closeable {
+
+	// Identifies the files of persistent memory spaces
+	private static final int MAGIC = 0x4D4D5332;
+
+	// The header fields: magic, size, free block count, allocated block count
+	// and the position of the saved blocks
+	private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+
+	private FileChannel channel;   // the channel of the file
+	private MappedByteBuffer data; // the mapping of the words of the memory space
+	private long tablePosition;    // the position of the saved blocks in effect
+	private long tableBytes;       // the length of the saved blocks in effect
+
+	// Constructs a memory space over an open file and its mapping
+	private MappedMemorySpace(int maxSize, AllocationPolicy policy, FileChannel channel,
+			MappedByteBuffer data) {
+		super(maxSize, policy, new WordStore(data));
+		this.channel = channel;
+		this.data = data;
+		this.tablePosition = blocksPosition();
+		this.tableBytes = 0;
+	}
+
+	/**
+	 * Opens the persistent memory space in the given file, which allocates
+	 * blocks by first-fit. If the file does not exist, it is created with an
+	 * empty memory space of the given size.
+	 *
+	 * @param file
+	 *                the file of the memory space
+	 * @param maxSize
+	 *                the size of the memory space, in words
+	 * @throws IOException
+	 *                     if the file cannot be opened, or it holds a memory
+	 *                     space of another size, or it is not a memory space
+	 *                     file
+	 * @return the opened memory space
+	 */
+	public static MappedMemorySpace open(Path file, int maxSize) throws IOException {
+		return open(file, maxSize, new FirstFitPolicy());
+	}
+
+	/**
+	 * Opens the persistent memory space in the given file, which allocates
+	 * blocks according to the given policy. If the file does not exist, it is
+	 * created with an empty memory space of the given size.
+	 *
+	 * @param file
+	 *                the file of the memory space
+	 * @param maxSize
+	 *                the size of the memory space, in words
+	 * @param policy
+	 *                the policy used by malloc for choosing a free block
+	 * @throws IOException
+	 *                     if the file cannot be opened, or it holds a memory
+	 *                     space of another size, or it is not a memory space
+	 *                     file
+	 * @return the opened memory space
+	 */
+	public static MappedMemorySpace open(Path file, int maxSize, AllocationPolicy policy)
+			throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			boolean exists = channel.size() > 0;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			if (exists) {
+				readFully(channel, header, 0);
+				header.flip();
+				if (header.getInt() != MAGIC) {
+					throw new IOException(file + " is not a memory space file");
+				}
+				int savedSize = header.getInt();
+				if (savedSize != maxSize) {
+					throw new IOException(file + " holds a memory space of " + savedSize + " words");
+				}
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES,
+					(long) maxSize * WordStore.WORD_BYTES);
+			MappedMemorySpace space = new MappedMemorySpace(maxSize, policy, channel, data);
+			if (exists) {
+				space.load(header.getInt(), header.getInt(), header.getLong());
+			} else {
+				space.sync();
+			}
+			return space;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Saves the free and allocated blocks in the file, and forces the words and
+	 * the blocks to the storage device.
+	 *
+	 * @throws IOException
+	 *                     if the file cannot be written
+	 */
+	public void sync() throws IOException {
+		MemoryBlock[] freeBlocks = getFreeBlocks();
+		MemoryBlock[] allocatedBlocks = getAllocatedBlocks();
+		ByteBuffer blocks = ByteBuffer.allocate(
+				(freeBlocks.length + allocatedBlocks.length) * 2 * Integer.BYTES);
+		for (MemoryBlock block : freeBlocks) {
+			blocks.putInt(block.baseAddress).putInt(block.length);
+		}
+		for (MemoryBlock block : allocatedBlocks) {
+			blocks.putInt(block.baseAddress).putInt(block.length);
+		}
+		blocks.flip();
+		// Writes the blocks where they do not overlap the ones in effect: right
+		// after the words if they fit before the blocks in effect, and
+		// otherwise right after the blocks in effect
+		long position = blocksPosition();
+		if (tablePosition == position || blocks.limit() > tablePosition - position) {
+			position = tablePosition + tableBytes;
+		}
+		writeFully(channel, blocks, position);
+		data.force();
+		channel.force(false);
+		// Switches the header to the new blocks, once they are on the device
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(getMaxSize()).putInt(freeBlocks.length)
+				.putInt(allocatedBlocks.length).putLong(position);
+		header.flip();
+		writeFully(channel, header, 0);
+		channel.force(false);
+		tablePosition = position;
+		tableBytes = blocks.limit();
+		// Drops the old blocks, if they follow the new ones
+		channel.truncate(tablePosition + tableBytes);
+	}
+
+	/**
+	 * Saves the blocks and closes the file. The memory space must not be used
+	 * afterwards.
+	 *
+	 * @throws IOException
+	 *                     if the file cannot be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Restores the saved blocks of the file, from the given position
+	private void load(int freeCount, int allocatedCount, long position) throws IOException {
+		if (freeCount < 0 || allocatedCount < 0 || position < blocksPosition()) {
+			throw new IOException("corrupt memory space file header");
+		}
+		ByteBuffer blocks = ByteBuffer.allocate((freeCount + allocatedCount) * 2 * Integer.BYTES);
+		readFully(channel, blocks, position);
+		tablePosition = position;
+		tableBytes = blocks.limit();
+		blocks.flip();
+		MemoryBlock[] freeBlocks = new MemoryBlock[freeCount];
+		for (int i = 0; i < freeCount; i++) {
+			freeBlocks[i] = new MemoryBlock(blocks.getInt(), blocks.getInt());
+		}
+		MemoryBlock[] allocatedBlocks = new MemoryBlock[allocatedCount];
+		for (int i = 0; i < allocatedCount; i++) {
+			allocatedBlocks[i] = new MemoryBlock(blocks.getInt(), blocks.getInt());
+		}
+		restore(freeBlocks, allocatedBlocks);
+	}
+
+	// Returns the position in the file of the saved blocks
+	private long blocksPosition() {
+		return HEADER_BYTES + (long) getMaxSize() * WordStore.WORD_BYTES;
+	}
+
+	// Reads bytes from the given position until the buffer is full
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("unexpected end of the memory space file");
+			}
+		}
+	}
+
+	// Writes all the remaining bytes of the buffer at the given position
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+}
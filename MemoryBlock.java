@@ -20,6 +20,43 @@ public class MemoryBlock {
 		this.length = length;
 	}
 
+	/**
+	 * Encodes a block as a single long, with the base address in the high 32
+	 * bits and the length in the low 32 bits. Packed blocks can be stored in
+	 * primitive arrays and maps, without allocating a MemoryBlock per block.
+	 * 
+	 * @param baseAddress
+	 *        the address of the first word in the block
+	 * @param length
+	 *        the length of the block, in words
+	 * @return the packed block
+	 */
+	public static long pack(int baseAddress, int length) {
+		return ((long) baseAddress << 32) | (length & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Decodes the base address of a packed block.
+	 * 
+	 * @param block
+	 *        a block encoded by pack
+	 * @return the base address of the block
+	 */
+	public static int baseOf(long block) {
+		return (int) (block >>> 32);
+	}
+
+	/**
+	 * Decodes the length of a packed block.
+	 * 
+	 * @param block
+	 *        a block encoded by pack
+	 * @return the length of the block, in words
+	 */
+	public static int lengthOf(long block) {
+		return (int) block;
+	}
+
 	/**
 	 * Checks if this block has the same base address and length as the given block
 	 * 
@@ -5,14 +5,78 @@
  * are
  * used, respectively, for creating new blocks and recycling existing blocks.
  */
-public class MemorySpace {
+public class MemorySpace implements Allocator {
+
+	// The size of this memory space, in words
+	private int maxSize;
 
 	// A list of the memory blocks that are presently allocated
 	private LinkedList allocatedList;
 
+	// Maps the base address of each allocated block to its allocatedList node
+	private IntHashMap<Node> allocatedIndex;
+
 	// A list of memory blocks that are presently free
 	private LinkedList freeList;
 
+	// The most nodes and blocks that the pool keeps for reuse
+	private static final int POOL_CAPACITY = 256;
+
+	// Recycles the nodes and blocks of the freeList and the allocatedList
+	private NodePool pool;
+
+	// Chooses the free block from which each block is allocated
+	private AllocationPolicy policy;
+
+	// Indexes the free blocks by start and end address (used only when
+	// eager coalescing or incremental defrag is enabled)
+	private AddressIndex addressIndex;
+
+	// True if free merges freed blocks with their free neighbours
+	private boolean eagerCoalescing;
+
+	// True once incremental defrag was used, so the address index is kept
+	private boolean incrementalDefrag;
+
+	// The free node that the next incremental defrag step examines, or null
+	// to start from the head of the freeList
+	private Node defragCursor;
+
+	// The incremental defrag steps run by each malloc and free; 0 disables it
+	private int defragSteps;
+
+	// Receives the allocation events, or null if tracing is disabled
+	private TraceSink traceSink;
+
+	// Maps handles to allocated blocks, or null if no handle was issued
+	private HandleTable handles;
+
+	// The most free blocks that malloc defrags before retrying; 0 disables it
+	private int defragBudget;
+
+	// True if free may have left adjacent free blocks since the last defrag
+	private boolean mergeable;
+
+	// Counts the defrags that malloc ran after failing, the allocations that
+	// succeeded after them, and the failures for which the defrag was skipped
+	private long retryDefrags;
+	private long retrySuccesses;
+	private long retriesOverBudget;
+
+	// Indexes the free blocks by length, to keep track of the largest one
+	private SizeIndex freeSizes;
+
+	// The length of the largest free block, or 0 if there is none
+	private int largestFree;
+
+	// The total length of the allocated blocks
+	private int wordsInUse;
+
+	// Counts the calls to malloc, the calls that failed, and the blocks freed
+	private long mallocCount;
+	private long mallocFailures;
+	private long freeCount;
+
 	/**
 	 * Constructs a new managed memory space of a given maximal size.
 	 * 
@@ -20,13 +84,41 @@ public class MemorySpace {
 	 *                the size of the memory space to be managed
 	 */
 	public MemorySpace(int maxSize) {
+		this(maxSize, new FirstFitPolicy());
+	}
+
+	/**
+	 * Constructs a new managed memory space of a given maximal size, which
+	 * allocates blocks according to the given policy.
+	 * 
+	 * @param maxSize
+	 *                the size of the memory space to be managed
+	 * @param policy
+	 *                the policy used by malloc for choosing a free block; the
+	 *                policy instance must not be shared with another memory space
+	 */
+	public MemorySpace(int maxSize, AllocationPolicy policy) {
+		this.maxSize = maxSize;
+		this.policy = policy;
+		pool = new NodePool(POOL_CAPACITY);
 		// initiallizes an empty list of allocated blocks.
-		allocatedList = new LinkedList();
+		allocatedList = new LinkedList(pool);
+		allocatedIndex = new IntHashMap<Node>();
 		// Initializes a free list containing a single block which represents
 		// the entire memory. The base address of this single initial block is
 		// zero, and its length is the given memory size.
-		freeList = new LinkedList();
-		freeList.addLast(new MemoryBlock(0, maxSize));
+		freeList = new LinkedList(pool);
+		freeSizes = new SizeIndex();
+		addFree(new MemoryBlock(0, maxSize));
+	}
+
+	/**
+	 * Gets the size of this memory space.
+	 * 
+	 * @return the size of this memory space, in words
+	 */
+	public int getMaxSize() {
+		return maxSize;
 	}
 
 	/**
@@ -62,51 +154,497 @@ public class MemorySpace {
 	 * then the found block is removed from the freeList and appended to the
 	 * allocatedList.
 	 * 
+	 * The free block is chosen by the allocation policy of this memory space.
+	 * The default policy is first-fit, as described above; other policies may
+	 * choose another fitting block, and may find it through their own index
+	 * rather than by scanning the freeList.
+	 * 
+	 * If no free block fits and defrag-on-failure is enabled, the memory space
+	 * is defragmented, within the configured budget, and the search is retried.
+	 * 
 	 * @param length
 	 *               the length (in words) of the memory block that has to be
 	 *               allocated
 	 * @return the base address of the allocated block, or -1 if unable to allocate
 	 */
 	public int malloc(int length) {
-		ListIterator itr = freeList.iterator();
-		while (itr.hasNext() && itr.current.block.length < length) {
-			itr.next();
+		if (defragSteps > 0) {
+			defragStep(defragSteps);
+		}
+		mallocCount++;
+		Node found = policy.find(this.freeList, length);
+		if (found == null && defragBudget > 0 && mergeable) {
+			found = defragAndRetry(length);
 		}
-		if (itr.current == null) {
+		if (found == null) {
+			mallocFailures++;
+			if (traceSink != null) {
+				traceSink.malloc(length, -1);
+			}
 			return -1;
 		}
-		MemoryBlock newBlock = new MemoryBlock(itr.current.block.baseAddress, length);
-		this.allocatedList.addLast(newBlock);
-		if (length == itr.current.block.length) {
-			this.freeList.remove(itr.current);
+		MemoryBlock newBlock;
+		if (length == found.block.length) {
+			// The whole free block becomes the allocated block
+			newBlock = found.block;
+			removeFree(found);
 		} else {
-			itr.current.block.baseAddress += length;
-			itr.current.block.length -= length;
+			newBlock = pool.obtainBlock(found.block.baseAddress, length);
+			resizeFree(found, found.block.baseAddress + length, found.block.length - length);
+		}
+		this.allocatedList.addLast(newBlock);
+		this.allocatedIndex.put(newBlock.baseAddress, this.allocatedList.getLast());
+		wordsInUse += length;
+		if (traceSink != null) {
+			traceSink.malloc(length, newBlock.baseAddress);
 		}
-		System.out.println(this.allocatedList.toString());
 		return newBlock.baseAddress;
 	}
 
+	/**
+	 * Allocates a memory block of a requested length (in words), like malloc,
+	 * and returns a handle to it. Unlike the block's address, the handle remains
+	 * valid when compact moves the block. The block should be freed with
+	 * freeHandle, which also releases the handle.
+	 * 
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the handle of the allocated block, or -1 if unable to allocate
+	 */
+	public int mallocHandle(int length) {
+		int address = malloc(length);
+		if (address == -1) {
+			return -1;
+		}
+		if (handles == null) {
+			handles = new HandleTable();
+		}
+		return handles.add(address);
+	}
+
+	/**
+	 * Gets the current base address of the block of the given handle.
+	 * 
+	 * @param handle
+	 *               a handle returned by mallocHandle
+	 * @throws IllegalArgumentException
+	 *                                  if the handle is not in use
+	 * @return the base address of the block
+	 */
+	public int resolve(int handle) {
+		if (handles == null) {
+			throw new IllegalArgumentException("handle is not in use");
+		}
+		return handles.get(handle);
+	}
+
+	/**
+	 * Frees the block of the given handle, and releases the handle.
+	 * 
+	 * @param handle
+	 *               a handle returned by mallocHandle
+	 * @throws IllegalArgumentException
+	 *                                  if the handle is not in use
+	 */
+	public void freeHandle(int handle) {
+		free(resolve(handle));
+		handles.remove(handle);
+	}
+
+	// Defrags the free blocks, fully if there are no more than the budget, and
+	// otherwise by as many incremental steps as the budget allows, and then
+	// finds a free node for the given length again
+	private Node defragAndRetry(int length) {
+		if (this.freeList.getSize() > defragBudget) {
+			retriesOverBudget++;
+			if (defragStep(defragBudget) == 0) {
+				return null;
+			}
+		} else {
+			retryDefrags++;
+			merge();
+		}
+		Node found = policy.find(this.freeList, length);
+		if (found != null) {
+			retrySuccesses++;
+		}
+		return found;
+	}
+
+	/**
+	 * Enables or disables defrag-on-failure. When enabled, a malloc that finds
+	 * no fitting free block defrags this memory space and tries again. The
+	 * budget bounds the work that a single malloc may spend on it: if the
+	 * freeList holds no more blocks than the budget, it is fully defragged;
+	 * otherwise, malloc runs as many defragStep steps as the budget allows, so
+	 * each failing malloc on a large fragmented heap makes bounded progress,
+	 * and the steps resume where the previous ones stopped. The defrag is
+	 * skipped when no block was freed since the last full defrag, since it
+	 * would merge nothing.
+	 * 
+	 * @param budget
+	 *               the most free blocks that malloc may examine, or 0 to
+	 *               disable defrag-on-failure
+	 * @throws IllegalArgumentException
+	 *                                  if the budget is negative
+	 */
+	public void setDefragOnFailure(int budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("budget must not be negative");
+		}
+		this.defragBudget = budget;
+	}
+
+	/**
+	 * Gets the number of times malloc failed to find a free block, and then ran
+	 * a full defrag.
+	 * 
+	 * @return the number of full defrags run by malloc
+	 */
+	public long getRetryDefragCount() {
+		return retryDefrags;
+	}
+
+	/**
+	 * Gets the number of allocations that succeeded only after malloc ran a
+	 * full or a bounded defrag.
+	 * 
+	 * @return the number of allocations saved by defrag-on-failure
+	 */
+	public long getRetrySuccessCount() {
+		return retrySuccesses;
+	}
+
+	/**
+	 * Gets the number of times malloc failed to find a free block, and ran
+	 * only the incremental steps that the budget allows, because the freeList
+	 * held more blocks than the budget.
+	 * 
+	 * @return the number of bounded defrags run by malloc
+	 */
+	public long getRetryOverBudgetCount() {
+		return retriesOverBudget;
+	}
+
+	// Appends the given block to the freeList, and indexes its node
+	private void addFree(MemoryBlock block) {
+		this.freeList.addLast(block);
+		Node node = this.freeList.getLast();
+		policy.add(node);
+		if (addressIndex != null) {
+			addressIndex.add(node);
+		}
+		addFreeSize(node);
+	}
+
+	// Removes the given node from the freeList and from the indexes, and
+	// recycles the node; its block is left to the caller
+	private void removeFree(Node node) {
+		unindexFree(node);
+		this.freeList.remove(node);
+		pool.recycle(node);
+	}
+
+	// Moves and resizes the block of the given free node, keeping the indexes valid
+	private void resizeFree(Node node, int baseAddress, int length) {
+		if (addressIndex != null) {
+			addressIndex.remove(node);
+		}
+		int oldBaseAddress = node.block.baseAddress;
+		int oldLength = node.block.length;
+		node.block.baseAddress = baseAddress;
+		node.block.length = length;
+		policy.resize(node, oldBaseAddress, oldLength);
+		if (addressIndex != null) {
+			addressIndex.add(node);
+		}
+		removeFreeSize(oldLength, oldBaseAddress);
+		addFreeSize(node);
+	}
+
+	// Removes the given free node from the indexes, before it leaves the freeList
+	private void unindexFree(Node node) {
+		if (node == defragCursor) {
+			defragCursor = node.next;
+		}
+		policy.remove(node);
+		if (addressIndex != null) {
+			addressIndex.remove(node);
+		}
+		removeFreeSize(node.block.length, node.block.baseAddress);
+	}
+
+	// Adds the given free node to the size index, updating the largest length
+	private void addFreeSize(Node node) {
+		freeSizes.add(node);
+		largestFree = Math.max(largestFree, node.block.length);
+	}
+
+	// Removes a free block from the size index, updating the largest length
+	// from the index if the block was the largest one
+	private void removeFreeSize(int length, int baseAddress) {
+		freeSizes.remove(length, baseAddress);
+		if (length == largestFree) {
+			Node largest = freeSizes.largest();
+			largestFree = (largest == null) ? 0 : largest.block.length;
+		}
+	}
+
+	/**
+	 * Gets the number of calls to malloc, including the failed ones.
+	 * 
+	 * @return the number of malloc calls
+	 */
+	public long getMallocCount() {
+		return mallocCount;
+	}
+
+	/**
+	 * Gets the number of calls to malloc that returned -1.
+	 * 
+	 * @return the number of failed malloc calls
+	 */
+	public long getMallocFailureCount() {
+		return mallocFailures;
+	}
+
+	/**
+	 * Gets the number of blocks freed. Calls to free with an address that is
+	 * not allocated are not counted.
+	 * 
+	 * @return the number of freed blocks
+	 */
+	public long getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	 * Gets the total length of the allocated blocks.
+	 * 
+	 * @return the words in use
+	 */
+	public int getWordsInUse() {
+		return wordsInUse;
+	}
+
+	/**
+	 * Gets the number of blocks in the freeList.
+	 * 
+	 * @return the number of free blocks
+	 */
+	public int getFreeBlockCount() {
+		return this.freeList.getSize();
+	}
+
+	/**
+	 * Gets the length of the largest free block, in O(1) time. The free blocks
+	 * are indexed by length as they change, so this does not scan the
+	 * freeList.
+	 * 
+	 * @return the length of the largest free block, or 0 if there is none
+	 */
+	public int getLargestFreeBlock() {
+		return largestFree;
+	}
+
+	/**
+	 * Gets the external fragmentation of this memory space: the fraction of
+	 * the free space that lies outside the largest free block, and therefore
+	 * cannot serve a request as long as all of it. The value is 0 when all the
+	 * free space is in one block, and approaches 1 as it is scattered over many
+	 * small blocks.
+	 * 
+	 * @return the external fragmentation, between 0 and 1
+	 */
+	public double getExternalFragmentation() {
+		int totalFree = maxSize - wordsInUse;
+		if (totalFree <= 0) {
+			return 0;
+		}
+		return 1 - (double) largestFree / totalFree;
+	}
+
+	/**
+	 * Sets the sink that receives the malloc, free and defrag events of this
+	 * memory space. Tracing is disabled by default, and then costs nothing.
+	 * 
+	 * @param traceSink
+	 *                  the sink that receives the events, or null to disable
+	 *                  tracing
+	 */
+	public void setTraceSink(TraceSink traceSink) {
+		this.traceSink = traceSink;
+	}
+
+	/**
+	 * Enables or disables eager coalescing. When enabled, free merges the freed
+	 * block right away with the free blocks that end where it starts and start
+	 * where it ends, so adjacent free blocks never accumulate and defrag has
+	 * nothing left to do. The neighbours are found through an address index
+	 * over the freeList. Enabling eager coalescing defrags this memory space
+	 * first.
+	 * 
+	 * @param enabled
+	 *                true to merge freed blocks eagerly, false to leave merging
+	 *                to defrag
+	 */
+	public void setEagerCoalescing(boolean enabled) {
+		if (enabled && !eagerCoalescing) {
+			defrag();
+			indexAddresses();
+		} else if (!enabled && !incrementalDefrag) {
+			addressIndex = null;
+		}
+		eagerCoalescing = enabled;
+	}
+
+	/**
+	 * Checks if eager coalescing is enabled.
+	 * 
+	 * @return true if free merges freed blocks with their free neighbours
+	 */
+	public boolean isEagerCoalescing() {
+		return eagerCoalescing;
+	}
+
+	// Builds the address index over the freeList, unless it is already maintained
+	private void indexAddresses() {
+		if (addressIndex == null) {
+			addressIndex = new AddressIndex();
+			addressIndex.rebuild(this.freeList);
+		}
+	}
+
+	/**
+	 * Performs a bounded part of the work of defrag. Each step examines one
+	 * free block, found through a roving cursor over the freeList, and merges
+	 * it with the free block that starts where it ends, if there is one; the
+	 * cursor stays on a block until it has no such neighbour left. Repeated
+	 * steps therefore merge all the adjacent free blocks, like defrag, but the
+	 * work is spread over many short calls, for example from a background
+	 * thread or from malloc and free.
+	 * <p>
+	 * The neighbours are found through an address index over the freeList,
+	 * which is built by the first call, and maintained from then on.
+	 * 
+	 * @param steps
+	 *              the most free blocks to examine
+	 * @return the number of merges performed
+	 */
+	public int defragStep(int steps) {
+		incrementalDefrag = true;
+		indexAddresses();
+		int merges = 0;
+		for (int i = 0; i < steps && this.freeList.getSize() > 1; i++) {
+			if (defragCursor == null) {
+				defragCursor = this.freeList.getFirst();
+			}
+			Node node = defragCursor;
+			MemoryBlock block = node.block;
+			Node after = (block.length == 0) ? null : addressIndex.startingAt(block.baseAddress + block.length);
+			if (after != null && after != node) {
+				int length = block.length + after.block.length;
+				MemoryBlock absorbed = after.block;
+				removeFree(after);
+				pool.recycleBlock(absorbed);
+				resizeFree(node, block.baseAddress, length);
+				merges++;
+			} else {
+				defragCursor = node.next;
+			}
+		}
+		return merges;
+	}
+
+	/**
+	 * Enables or disables incremental defrag on every malloc and free. When
+	 * enabled, each call first runs the given number of defragStep steps, so
+	 * adjacent free blocks are merged gradually, without the pause of a full
+	 * defrag.
+	 * 
+	 * @param steps
+	 *              the steps to run on each malloc and free, or 0 to disable
+	 *              incremental defrag
+	 * @throws IllegalArgumentException
+	 *                                  if the number of steps is negative
+	 */
+	public void setIncrementalDefrag(int steps) {
+		if (steps < 0) {
+			throw new IllegalArgumentException("steps must not be negative");
+		}
+		this.defragSteps = steps;
+		if (steps > 0) {
+			incrementalDefrag = true;
+			indexAddresses();
+		}
+	}
+
+	// Returns the given block to the free space, merging it with the free
+	// blocks that are adjacent to it
+	private void coalesceFree(MemoryBlock block) {
+		if (block.length == 0) {
+			pool.recycleBlock(block);
+			return;
+		}
+		Node before = addressIndex.endingAt(block.baseAddress);
+		Node after = addressIndex.startingAt(block.baseAddress + block.length);
+		if (before != null && after != null) {
+			int length = before.block.length + block.length + after.block.length;
+			MemoryBlock absorbed = after.block;
+			removeFree(after);
+			pool.recycleBlock(absorbed);
+			resizeFree(before, before.block.baseAddress, length);
+		} else if (before != null) {
+			resizeFree(before, before.block.baseAddress, before.block.length + block.length);
+		} else if (after != null) {
+			resizeFree(after, block.baseAddress, block.length + after.block.length);
+		} else {
+			addFree(block);
+			return;
+		}
+		// The freed block was merged into a free neighbour
+		pool.recycleBlock(block);
+	}
+
 	/**
 	 * Frees the memory block whose base address equals the given address.
 	 * This implementation deletes the block whose base address equals the given
 	 * address from the allocatedList, and adds it at the end of the free list.
+	 * The block is found through an address index rather than by scanning the
+	 * allocatedList. Freeing an address that is not allocated has no effect.
+	 * If eager coalescing is enabled, the freed block is merged with its free
+	 * neighbours instead of being added as a separate block.
 	 * 
 	 * @param baseAddress
 	 *                    the starting address of the block to freeList
+	 * @throws IllegalArgumentException
+	 *                                  if no block is allocated
 	 */
 	public void free(int address) {
-		ListIterator itr = allocatedList.iterator();
-		if (itr.current == null) {
+		if (allocatedList.getSize() == 0) {
 			throw new IllegalArgumentException(
 					"index must be between 0 and size");
 		}
-		while (itr.current.next != null && itr.current.block.baseAddress != address) {
-			itr.next();
+		if (traceSink != null) {
+			traceSink.free(address);
 		}
-		if (itr.current.block.baseAddress == address) {
-			this.freeList.addLast(itr.current.block);
-			this.allocatedList.remove(itr.current);
+		Node node = allocatedIndex.remove(address);
+		if (node != null) {
+			MemoryBlock block = node.block;
+			this.allocatedList.remove(node);
+			pool.recycle(node);
+			wordsInUse -= block.length;
+			freeCount++;
+			if (eagerCoalescing) {
+				coalesceFree(block);
+			} else {
+				addFree(block);
+				mergeable = true;
+			}
+		}
+		if (defragSteps > 0) {
+			defragStep(defragSteps);
 		}
 	}
 
@@ -116,29 +654,241 @@ public class MemorySpace {
 	 * for debugging purposes.
 	 */
 	public String toString() {
-		return freeList.toString() + "\n" + allocatedList.toString();
+		StringBuilder str = new StringBuilder(16 * (freeList.getSize() + allocatedList.getSize()) + 1);
+		try {
+			writeTo(str);
+		} catch (java.io.IOException e) {
+			// A StringBuilder never throws
+			throw new java.io.UncheckedIOException(e);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Writes the textual representation of the free list and the allocated
+	 * list of this memory space to the given output, as a stream. This can dump
+	 * large lists, for example to a file writer, without building one string.
+	 * The written text is the same as the one returned by toString.
+	 * 
+	 * @param out
+	 *            the output to which the text is written
+	 * @throws java.io.IOException
+	 *                             if the output cannot be written
+	 */
+	public void writeTo(Appendable out) throws java.io.IOException {
+		freeList.writeTo(out);
+		out.append('\n');
+		allocatedList.writeTo(out);
+	}
+
+	/**
+	 * Gets copies of the free blocks of this memory space, in freeList order.
+	 * 
+	 * @return the free blocks
+	 */
+	protected MemoryBlock[] getFreeBlocks() {
+		return copyBlocks(this.freeList);
+	}
+
+	/**
+	 * Gets copies of the allocated blocks of this memory space, in
+	 * allocatedList order.
+	 * 
+	 * @return the allocated blocks
+	 */
+	protected MemoryBlock[] getAllocatedBlocks() {
+		return copyBlocks(this.allocatedList);
+	}
+
+	/**
+	 * Replaces the free blocks and the allocated blocks of this memory space
+	 * with the given ones, for example when restoring a persisted memory space.
+	 * The blocks are added in the given order, and are trusted to describe a
+	 * valid state: together, they must cover the memory space without overlaps.
+	 * 
+	 * @param freeBlocks
+	 *                        the free blocks, in freeList order
+	 * @param allocatedBlocks
+	 *                        the allocated blocks, in allocatedList order
+	 */
+	protected void restore(MemoryBlock[] freeBlocks, MemoryBlock[] allocatedBlocks) {
+		ListIterator itr = this.freeList.iterator();
+		while (itr.hasNext()) {
+			policy.remove(itr.current);
+			itr.next();
+		}
+		this.freeList = new LinkedList(pool);
+		this.allocatedList = new LinkedList(pool);
+		this.allocatedIndex.clear();
+		this.defragCursor = null;
+		this.freeSizes = new SizeIndex();
+		this.largestFree = 0;
+		this.wordsInUse = 0;
+		if (addressIndex != null) {
+			addressIndex = new AddressIndex();
+		}
+		for (MemoryBlock block : allocatedBlocks) {
+			this.allocatedList.addLast(new MemoryBlock(block.baseAddress, block.length));
+			this.allocatedIndex.put(block.baseAddress, this.allocatedList.getLast());
+			this.wordsInUse += block.length;
+		}
+		for (MemoryBlock block : freeBlocks) {
+			addFree(new MemoryBlock(block.baseAddress, block.length));
+		}
+		// The restored free blocks may be adjacent
+		this.mergeable = freeBlocks.length > 1;
+	}
+
+	// Copies the blocks of the given list into an array
+	private static MemoryBlock[] copyBlocks(LinkedList list) {
+		MemoryBlock[] blocks = new MemoryBlock[list.getSize()];
+		ListIterator itr = list.iterator();
+		for (int i = 0; i < blocks.length; i++) {
+			MemoryBlock block = itr.next();
+			blocks[i] = new MemoryBlock(block.baseAddress, block.length);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Compacts this memory space: slides all the allocated blocks toward
+	 * address 0, keeping their order by address, so that all the free space
+	 * ends up as a single block at the end of the memory space. Handles are
+	 * updated to the new addresses of their blocks, but addresses that were
+	 * returned by malloc are no longer valid for blocks that moved. Each move
+	 * is reported to the trace sink, if one is set.
+	 * <p>
+	 * The blocks are sorted by base address once, with a radix sort, and moved
+	 * in a single pass; the words of each moved block are relocated through
+	 * the relocate method.
+	 */
+	public void compact() {
+		int count = this.allocatedList.getSize();
+		Node[] nodes = new Node[count];
+		int[] bases = new int[count];
+		ListIterator itr = this.allocatedList.iterator();
+		for (int i = 0; i < count; i++) {
+			nodes[i] = itr.current;
+			bases[i] = itr.current.block.baseAddress;
+			itr.next();
+		}
+		int[] order = RadixSort.order(bases, count);
+		int[] oldAddresses = new int[count];
+		int[] newAddresses = new int[count];
+		int next = 0;
+		for (int i = 0; i < count; i++) {
+			MemoryBlock block = nodes[order[i]].block;
+			if (block.baseAddress != next) {
+				relocate(block.baseAddress, next, block.length);
+				if (traceSink != null) {
+					traceSink.relocate(block.baseAddress, next);
+				}
+			}
+			oldAddresses[i] = block.baseAddress;
+			newAddresses[i] = next;
+			block.baseAddress = next;
+			next += block.length;
+		}
+		this.allocatedIndex.clear();
+		for (int i = 0; i < count; i++) {
+			this.allocatedIndex.put(nodes[i].block.baseAddress, nodes[i]);
+		}
+		itr = this.freeList.iterator();
+		while (itr.hasNext()) {
+			unindexFree(itr.current);
+			itr.next();
+		}
+		this.freeList = new LinkedList(pool);
+		if (next < maxSize) {
+			addFree(new MemoryBlock(next, maxSize - next));
+		}
+		if (handles != null) {
+			handles.relocate(oldAddresses, newAddresses, count);
+		}
+	}
+
+	/**
+	 * Moves the contents of a block that compact relocates. This memory space
+	 * only tracks addresses, so this implementation does nothing; memory spaces
+	 * that store words override it to copy them. The destination is never
+	 * above the source, but the two ranges may overlap.
+	 * 
+	 * @param from
+	 *               the old base address of the block
+	 * @param to
+	 *               the new base address of the block
+	 * @param length
+	 *               the length of the block, in words
+	 */
+	protected void relocate(int from, int to, int length) {
 	}
 
 	/**
 	 * Performs defragmantation of this memory space.
 	 * Normally, called by malloc, when it fails to find a memory block of the
 	 * requested size.
-	 * In this implementation Malloc does not call defrag.
+	 * In this implementation Malloc calls defrag only when defrag-on-failure
+	 * is enabled.
+	 * <p>
+	 * The free blocks are sorted once by base address, using a radix sort, and
+	 * each run of adjacent blocks is then merged into the block with the lowest
+	 * address, in a single pass. The merged blocks keep their positions in the
+	 * freeList, and the absorbed blocks are removed from it in one more pass.
 	 */
 	public void defrag() {
-		for (int i = 0; i < this.freeList.getSize(); i++) {
-			MemoryBlock block = this.freeList.getBlock(i);
-			int sum = block.baseAddress + block.length;
-			ListIterator itr = freeList.iterator();
-			while (itr.hasNext()) {
-				if (itr.current.block.baseAddress == sum) {
-					block.length += itr.current.block.length;
-					this.freeList.remove(itr.current);
-					defrag();
+		if (traceSink != null) {
+			traceSink.defrag();
+		}
+		merge();
+	}
+
+	// Merges the runs of adjacent free blocks; see defrag
+	private void merge() {
+		mergeable = false;
+		int count = this.freeList.getSize();
+		if (count < 2) {
+			return;
+		}
+		Node[] nodes = new Node[count];
+		int[] bases = new int[count];
+		ListIterator itr = this.freeList.iterator();
+		for (int i = 0; i < count; i++) {
+			nodes[i] = itr.current;
+			bases[i] = itr.current.block.baseAddress;
+			itr.next();
+		}
+		int[] order = RadixSort.order(bases, count);
+		boolean merged = false;
+		int i = 0;
+		while (i < count) {
+			Node start = nodes[order[i]];
+			int end = start.block.baseAddress + start.block.length;
+			int j = i + 1;
+			while (j < count && nodes[order[j]].block.baseAddress == end) {
+				Node absorbed = nodes[order[j]];
+				end += absorbed.block.length;
+				// Marks the absorbed block, so that it is dropped below
+				unindexFree(absorbed);
+				absorbed.block.length = -1;
+				j++;
+			}
+			if (j > i + 1) {
+				resizeFree(start, start.block.baseAddress, end - start.block.baseAddress);
+				merged = true;
+			}
+			i = j;
+		}
+		if (merged) {
+			this.freeList.removeIf(block -> block.length < 0);
+			for (Node node : nodes) {
+				if (node.block.length < 0) {
+					pool.recycleBlock(node.block);
+					pool.recycle(node);
 				}
-				itr.next();
 			}
+			// The blocks were absorbed out of list order, so the incremental
+			// defrag cursor may have moved onto one of them
+			defragCursor = null;
 		}
-		return;
 	}
-}
\ No newline at end of file
+}
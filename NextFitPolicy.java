@@ -0,0 +1,54 @@
+/**
+ * Allocates from the first free block that is long enough, scanning the free
+ * list from where the previous allocation succeeded (a roving cursor), and
+ * wrapping around to the head. This spreads allocations over the free list,
+ * instead of rescanning the small fragments that first-fit leaves near its
+ * head.
+ * <p>
+ * The cursor stays valid as the free list changes: when the block under the
+ * cursor is split by malloc, the cursor stays on its remainder; when the block
+ * is removed (allocated exactly, or merged away by defrag or coalescing), the
+ * cursor moves on to the following block. If that block was removed as well,
+ * which happens when defrag removes several blocks, the next scan notices that
+ * the cursor is no longer linked and starts from the head.
+ */
+public class NextFitPolicy implements AllocationPolicy {
+
+	private Node cursor; // the node where the next scan starts, or null for the head
+
+	@Override
+	public Node find(LinkedList freeList, int length) {
+		Node start = (cursor == null || !freeList.contains(cursor)) ? freeList.getFirst() : cursor;
+		Node current = start;
+		while (current != null) {
+			if (current.block.length >= length) {
+				cursor = current;
+				return current;
+			}
+			current = current.next;
+			if (current == null) {
+				current = freeList.getFirst();
+			}
+			if (current == start) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void add(Node node) {
+	}
+
+	@Override
+	public void remove(Node node) {
+		if (node == cursor) {
+			// The node is still linked, so its next node is the one that follows it
+			cursor = node.next;
+		}
+	}
+
+	@Override
+	public void resize(Node node, int oldBaseAddress, int oldLength) {
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Recycles Node and MemoryBlock objects, so that lists whose nodes and blocks
+ * are added and removed at a high rate, like the lists of a memory space,
+ * reuse them instead of allocating new ones. A pool can be shared by several
+ * lists; a list that is constructed with a pool takes its new nodes from it.
+ * <p>
+ * The pool holds a bounded number of objects of each kind; objects recycled
+ * beyond the bound are dropped. An object must be recycled only when nothing
+ * refers to it anymore: a recycled node must have been removed from its list
+ * and from any index over the list.
+ */
+public class NodePool {
+
+	private Node[] nodes;         // the recycled nodes
+	private int nodeCount;        // the number of recycled nodes
+	private MemoryBlock[] blocks; // the recycled blocks
+	private int blockCount;       // the number of recycled blocks
+
+	/**
+	 * Constructs a new, empty pool.
+	 *
+	 * @param capacity
+	 *                 the most objects of each kind that the pool holds
+	 * @throws IllegalArgumentException
+	 *                                  if the capacity is negative
+	 */
+	public NodePool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		nodes = new Node[capacity];
+		blocks = new MemoryBlock[capacity];
+	}
+
+	/**
+	 * Gets the number of nodes that are ready to be reused.
+	 *
+	 * @return the number of pooled nodes
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the number of blocks that are ready to be reused.
+	 *
+	 * @return the number of pooled blocks
+	 */
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Gets an unlinked node that points to the given memory block, reusing a
+	 * recycled node if there is one.
+	 *
+	 * @param block
+	 *              the memory block that the node points at
+	 * @return the node
+	 */
+	public Node obtain(MemoryBlock block) {
+		if (nodeCount == 0) {
+			return new Node(block);
+		}
+		Node node = nodes[--nodeCount];
+		nodes[nodeCount] = null;
+		node.block = block;
+		return node;
+	}
+
+	/**
+	 * Recycles the given node. The node must not be used afterwards.
+	 *
+	 * @param node
+	 *             a node that is no longer referred to
+	 */
+	public void recycle(Node node) {
+		node.block = null;
+		node.next = null;
+		node.prev = null;
+		node.list = null;
+		if (nodeCount < nodes.length) {
+			nodes[nodeCount++] = node;
+		}
+	}
+
+	/**
+	 * Gets a memory block with the given base address and length, reusing a
+	 * recycled block if there is one.
+	 *
+	 * @param baseAddress
+	 *                    the address of the first word in the block
+	 * @param length
+	 *                    the length of the block, in words
+	 * @return the block
+	 */
+	public MemoryBlock obtainBlock(int baseAddress, int length) {
+		if (blockCount == 0) {
+			return new MemoryBlock(baseAddress, length);
+		}
+		MemoryBlock block = blocks[--blockCount];
+		blocks[blockCount] = null;
+		block.baseAddress = baseAddress;
+		block.length = length;
+		return block;
+	}
+
+	/**
+	 * Recycles the given memory block. The block must not be used afterwards.
+	 *
+	 * @param block
+	 *              a block that is no longer referred to
+	 */
+	public void recycleBlock(MemoryBlock block) {
+		if (blockCount < blocks.length) {
+			blocks[blockCount++] = block;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * A managed memory space whose words are actually stored, in an off-heap
+ * word store of maxSize words. The blocks are managed as in any memory space,
+ * and the words of an allocated block are accessed through the address that
+ * malloc returned, plus an offset within the block.
+ * <p>
+ * Accesses are checked against the bounds of the memory space, but not
+ * against the allocated blocks, so reading or writing a free word is allowed,
+ * as it would be with real memory.
+ */
+public class OffHeapMemorySpace extends MemorySpace {
+
+	private WordStore store; // holds the words of this memory space
+
+	/**
+	 * Constructs a new off-heap memory space of a given maximal size, which
+	 * allocates blocks by first-fit.
+	 *
+	 * @param maxSize
+	 *                the size of the memory space to be managed, in words
+	 */
+	public OffHeapMemorySpace(int maxSize) {
+		this(maxSize, new FirstFitPolicy());
+	}
+
+	/**
+	 * Constructs a new off-heap memory space of a given maximal size, which
+	 * allocates blocks according to the given policy.
+	 *
+	 * @param maxSize
+	 *                the size of the memory space to be managed, in words
+	 * @param policy
+	 *                the policy used by malloc for choosing a free block
+	 */
+	public OffHeapMemorySpace(int maxSize, AllocationPolicy policy) {
+		this(maxSize, policy, new WordStore(maxSize));
+	}
+
+	/**
+	 * Constructs a new memory space of a given maximal size, whose words are
+	 * kept in the given store.
+	 *
+	 * @param maxSize
+	 *                the size of the memory space to be managed, in words
+	 * @param policy
+	 *                the policy used by malloc for choosing a free block
+	 * @param store
+	 *                the store of the words, of at least maxSize words
+	 * @throws IllegalArgumentException
+	 *                                  if the store is too small
+	 */
+	protected OffHeapMemorySpace(int maxSize, AllocationPolicy policy, WordStore store) {
+		super(maxSize, policy);
+		if (store.getSize() < maxSize) {
+			throw new IllegalArgumentException("store must hold at least maxSize words");
+		}
+		this.store = store;
+	}
+
+	/**
+	 * Reads the word at the given address.
+	 *
+	 * @param address
+	 *                the address of the word
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the address is outside this memory
+	 *                                   space
+	 * @return the word
+	 */
+	public int readWord(int address) {
+		checkRange(address, 1);
+		return store.readWord(address);
+	}
+
+	/**
+	 * Writes a word at the given address.
+	 *
+	 * @param address
+	 *                the address of the word
+	 * @param value
+	 *                the word to be written
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the address is outside this memory
+	 *                                   space
+	 */
+	public void writeWord(int address, int value) {
+		checkRange(address, 1);
+		store.writeWord(address, value);
+	}
+
+	/**
+	 * Reads consecutive words, starting at the given address, into an array.
+	 *
+	 * @param address
+	 *                the address of the first word
+	 * @param dst
+	 *                the array into which the words are read
+	 * @param offset
+	 *                the index in the array of the first word
+	 * @param length
+	 *                the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the range is outside this memory
+	 *                                   space or the array
+	 */
+	public void readWords(int address, int[] dst, int offset, int length) {
+		checkRange(address, length);
+		store.read(address, dst, offset, length);
+	}
+
+	/**
+	 * Writes consecutive words from an array, starting at the given address.
+	 *
+	 * @param address
+	 *                the address of the first word
+	 * @param src
+	 *                the array from which the words are written
+	 * @param offset
+	 *                the index in the array of the first word
+	 * @param length
+	 *                the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the range is outside this memory
+	 *                                   space or the array
+	 */
+	public void writeWords(int address, int[] src, int offset, int length) {
+		checkRange(address, length);
+		store.write(address, src, offset, length);
+	}
+
+	/**
+	 * Copies consecutive words from one address to another, for example from
+	 * one allocated block to another. The ranges may overlap.
+	 *
+	 * @param from
+	 *               the address of the first source word
+	 * @param to
+	 *               the address of the first destination word
+	 * @param length
+	 *               the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if a range is outside this memory space
+	 */
+	public void copyWords(int from, int to, int length) {
+		checkRange(from, length);
+		checkRange(to, length);
+		store.copy(from, to, length);
+	}
+
+	/**
+	 * Copies the words of a block that compact relocates.
+	 *
+	 * @param from
+	 *               the old base address of the block
+	 * @param to
+	 *               the new base address of the block
+	 * @param length
+	 *               the length of the block, in words
+	 */
+	@Override
+	protected void relocate(int from, int to, int length) {
+		store.copy(from, to, length);
+	}
+
+	/**
+	 * Gets the store that holds the words of this memory space.
+	 *
+	 * @return the word store
+	 */
+	protected WordStore getStore() {
+		return store;
+	}
+
+	// Checks that a range of words lies within this memory space
+	private void checkRange(int address, int length) {
+		if (address < 0 || length < 0 || address > getMaxSize() - length) {
+			throw new IndexOutOfBoundsException(
+					"address must be between 0 and size");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Sorts int keys with a least-significant-digit radix sort, one byte per
+ * pass. The sort is stable and runs in linear time, and it works on
+ * primitive arrays, so it can order memory blocks by address without
+ * comparators or boxing.
+ */
+public class RadixSort {
+
+	// The number of bits sorted in each pass, and the resulting digit range
+	private static final int BITS = 8;
+	private static final int RADIX = 1 << BITS;
+
+	/**
+	 * Computes the order in which the first count keys are sorted.
+	 * The returned permutation lists indexes of the keys array, such that
+	 * keys[order[0]] is the smallest key; equal keys keep their original order.
+	 *
+	 * @param keys
+	 *              the keys to be sorted; the array is not modified
+	 * @param count
+	 *              the number of keys, starting at index 0, to be sorted
+	 * @return the sorting permutation, of length count
+	 */
+	public static int[] order(int[] keys, int count) {
+		int[] order = new int[count];
+		int[] buffer = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		if (count < 2) {
+			return order;
+		}
+		int[] counts = new int[RADIX + 1];
+		for (int shift = 0; shift < 32; shift += BITS) {
+			java.util.Arrays.fill(counts, 0);
+			for (int i = 0; i < count; i++) {
+				counts[digit(keys[order[i]], shift) + 1]++;
+			}
+			// Skips the pass when all the keys share this digit
+			if (counts[digit(keys[order[0]], shift) + 1] == count) {
+				continue;
+			}
+			for (int d = 0; d < RADIX; d++) {
+				counts[d + 1] += counts[d];
+			}
+			for (int i = 0; i < count; i++) {
+				buffer[counts[digit(keys[order[i]], shift)]++] = order[i];
+			}
+			int[] swap = order;
+			order = buffer;
+			buffer = swap;
+		}
+		return order;
+	}
+
+	// Returns the digit of the key at the given shift; the sign bit is flipped
+	// so that negative keys are ordered before non-negative ones
+	private static int digit(int key, int shift) {
+		return ((key ^ Integer.MIN_VALUE) >>> shift) & (RADIX - 1);
+	}
+}
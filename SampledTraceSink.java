@@ -0,0 +1,71 @@
+/**
+ * A trace sink that forwards only one of every n events to another sink.
+ * Sampling keeps the cost of tracing a busy memory space low, while still
+ * showing the shape of its workload.
+ */
+public class SampledTraceSink implements TraceSink {
+
+	private TraceSink target; // the sink that receives the sampled events
+	private int period;       // one of every period events is forwarded
+	private int countdown;    // the number of events until the next forwarded one
+
+	/**
+	 * Constructs a new sink, which forwards the first event and then one of
+	 * every period events to the given sink.
+	 * 
+	 * @param target
+	 *               the sink that receives the sampled events
+	 * @param period
+	 *               the sampling period
+	 * @throws IllegalArgumentException
+	 *                                  if the period is not positive
+	 */
+	public SampledTraceSink(TraceSink target, int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.target = target;
+		this.period = period;
+		this.countdown = 0;
+	}
+
+	@Override
+	public void malloc(int length, int address) {
+		if (sample()) {
+			target.malloc(length, address);
+		}
+	}
+
+	@Override
+	public void free(int address) {
+		if (sample()) {
+			target.free(address);
+		}
+	}
+
+	@Override
+	public void defrag() {
+		if (sample()) {
+			target.defrag();
+		}
+	}
+
+	/**
+	 * Forwards every relocation, without sampling it, since the target may
+	 * track the addresses of the blocks that it has seen allocated.
+	 */
+	@Override
+	public void relocate(int from, int to) {
+		target.relocate(from, to);
+	}
+
+	// Checks if the current event should be forwarded
+	private boolean sample() {
+		if (countdown == 0) {
+			countdown = period - 1;
+			return true;
+		}
+		countdown--;
+		return false;
+	}
+}
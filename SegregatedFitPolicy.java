@@ -0,0 +1,30 @@
+/**
+ * Keeps a separate free list per power-of-two size class, and allocates from
+ * the bin that can satisfy the request, scanning only the bin of the requested
+ * size class, and otherwise using the next non-empty larger bin.
+ */
+public class SegregatedFitPolicy implements AllocationPolicy {
+
+	private SizeClassBins bins = new SizeClassBins(); // the free nodes, by size class
+
+	@Override
+	public Node find(LinkedList freeList, int length) {
+		return bins.find(length);
+	}
+
+	@Override
+	public void add(Node node) {
+		bins.add(node);
+	}
+
+	@Override
+	public void remove(Node node) {
+		bins.remove(node, node.block.length);
+	}
+
+	@Override
+	public void resize(Node node, int oldBaseAddress, int oldLength) {
+		bins.remove(node, oldLength);
+		bins.add(node);
+	}
+}
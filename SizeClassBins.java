@@ -0,0 +1,115 @@
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Segregates the nodes of a free list into bins by power-of-two size class.
+ * Bin k holds the nodes whose blocks have a length between 2^k (inclusive)
+ * and 2^(k+1) (exclusive). A bit mask records which bins are non-empty, so a
+ * request only scans the bin of its own size class, and otherwise takes a
+ * block from the next non-empty larger bin, all of whose blocks fit.
+ * <p>
+ * Like the size index, when a block is resized, its node must be removed from
+ * the bin of its old length, and then added back.
+ */
+public class SizeClassBins {
+
+	// The number of size classes; one per bit of a non-negative int
+	private static final int BIN_COUNT = 32;
+
+	// The nodes of each size class, in insertion order
+	private LinkedHashSet<Node>[] bins;
+
+	// Bit k is set if and only if bin k is non-empty
+	private int nonEmpty;
+
+	// The number of nodes in all the bins
+	private int size;
+
+	/**
+	 * Constructs a new set of empty bins.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SizeClassBins() {
+		bins = new LinkedHashSet[BIN_COUNT];
+		for (int i = 0; i < BIN_COUNT; i++) {
+			bins[i] = new LinkedHashSet<Node>();
+		}
+		nonEmpty = 0;
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of nodes in all the bins.
+	 *
+	 * @return the number of binned nodes
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Adds the given node to the bin of its size class.
+	 *
+	 * @param node
+	 *             the free list node to be binned
+	 */
+	public void add(Node node) {
+		int bin = sizeClass(node.block.length);
+		if (bins[bin].add(node)) {
+			nonEmpty |= 1 << bin;
+			size++;
+		}
+	}
+
+	/**
+	 * Removes the given node from the bin of the given length's size class.
+	 *
+	 * @param node
+	 *               the free list node to be removed from the bins
+	 * @param length
+	 *               the length under which the node was binned
+	 */
+	public void remove(Node node, int length) {
+		int bin = sizeClass(length);
+		if (bins[bin].remove(node)) {
+			size--;
+			if (bins[bin].isEmpty()) {
+				nonEmpty &= ~(1 << bin);
+			}
+		}
+	}
+
+	/**
+	 * Finds a node whose block's length equals at least the given length.
+	 * The bin of the requested size class is scanned first; if it holds no
+	 * fitting block, the first block of the next non-empty bin is used.
+	 *
+	 * @param length
+	 *               the requested length, in words
+	 * @return a fitting node, or null if no block is long enough
+	 */
+	public Node find(int length) {
+		int bin = sizeClass(length);
+		if ((nonEmpty & (1 << bin)) != 0) {
+			for (Node node : bins[bin]) {
+				if (node.block.length >= length) {
+					return node;
+				}
+			}
+		}
+		if (bin == BIN_COUNT - 1) {
+			return null;
+		}
+		int larger = nonEmpty & (-1 << (bin + 1));
+		if (larger == 0) {
+			return null;
+		}
+		Iterator<Node> itr = bins[Integer.numberOfTrailingZeros(larger)].iterator();
+		return itr.next();
+	}
+
+	// Returns the index of the bin that holds blocks of the given length
+	private static int sizeClass(int length) {
+		return 31 - Integer.numberOfLeadingZeros(Math.max(length, 1));
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * Indexes the nodes of a free list by the length of their memory blocks.
+ * The index is ordered by length, and then by base address, so the smallest
+ * block whose length is at least a requested length can be found in
+ * logarithmic time.
+ * <p>
+ * The index keys are computed from the blocks when they are added, so when a
+ * block is moved or resized, it must be removed from the index under its old
+ * base address and length, and then added back.
+ * <p>
+ * The index is a treap whose entries live in parallel arrays, and link to
+ * each other by slot number, with primitive keys. Removed slots are reused,
+ * so once the arrays are large enough, adding and removing nodes allocates
+ * nothing.
+ */
+public class SizeIndex {
+
+	// The slot number that stands for no entry
+	private static final int NIL = -1;
+
+	// The initial capacity of the arrays
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;      // the (length, baseAddress) key of each entry
+	private Node[] nodes;     // the free list node of each entry
+	private int[] left;       // the entry with the smaller keys, or the next
+	                          // unused slot if the slot is unused
+	private int[] right;      // the entry with the larger keys
+	private int[] priorities; // the heap priority of each entry
+	private int root;         // the entry at the root of the treap
+	private int unused;       // the first unused slot that was used before
+	private int slots;        // the number of slots that were ever used
+	private int size;         // the number of entries in this index
+	private int seed;         // the state of the priority generator
+
+	/**
+	 * Constructs a new, empty index.
+	 */
+	public SizeIndex() {
+		keys = new long[MIN_CAPACITY];
+		nodes = new Node[MIN_CAPACITY];
+		left = new int[MIN_CAPACITY];
+		right = new int[MIN_CAPACITY];
+		priorities = new int[MIN_CAPACITY];
+		root = NIL;
+		unused = NIL;
+		seed = 0x2545F491;
+	}
+
+	/**
+	 * Gets the number of nodes in this index.
+	 *
+	 * @return the number of indexed nodes
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Adds the given node to this index.
+	 *
+	 * @param node
+	 *             the free list node to be indexed
+	 */
+	public void add(Node node) {
+		int slot = obtainSlot();
+		keys[slot] = key(node.block.length, node.block.baseAddress);
+		nodes[slot] = node;
+		left[slot] = NIL;
+		right[slot] = NIL;
+		priorities[slot] = nextPriority();
+		root = insert(root, slot);
+	}
+
+	/**
+	 * Removes from this index the node whose block has the given length and
+	 * base address.
+	 *
+	 * @param length
+	 *                    the length of the indexed block
+	 * @param baseAddress
+	 *                    the base address of the indexed block
+	 */
+	public void remove(int length, int baseAddress) {
+		root = delete(root, key(length, baseAddress));
+	}
+
+	/**
+	 * Finds the node holding the smallest block whose length equals at least
+	 * the given length. Ties are broken in favour of the lowest base address.
+	 *
+	 * @param length
+	 *               the requested length, in words
+	 * @return the best fitting node, or null if no block is long enough
+	 */
+	public Node bestFit(int length) {
+		long key = key(Math.max(length, 0), 0);
+		int found = NIL;
+		int entry = root;
+		while (entry != NIL) {
+			if (keys[entry] >= key) {
+				found = entry;
+				entry = left[entry];
+			} else {
+				entry = right[entry];
+			}
+		}
+		return (found == NIL) ? null : nodes[found];
+	}
+
+	/**
+	 * Finds the node holding the largest block. Ties are broken in favour of
+	 * the highest base address.
+	 *
+	 * @return the largest node, or null if this index is empty
+	 */
+	public Node largest() {
+		if (root == NIL) {
+			return null;
+		}
+		int entry = root;
+		while (right[entry] != NIL) {
+			entry = right[entry];
+		}
+		return nodes[entry];
+	}
+
+	// Inserts the entry in the given slot into the subtree of the given entry,
+	// and returns the root of the subtree. An entry with the same key is
+	// replaced.
+	private int insert(int entry, int slot) {
+		if (entry == NIL) {
+			size++;
+			return slot;
+		}
+		if (keys[slot] == keys[entry]) {
+			nodes[entry] = nodes[slot];
+			releaseSlot(slot);
+		} else if (keys[slot] < keys[entry]) {
+			left[entry] = insert(left[entry], slot);
+			if (priorities[left[entry]] > priorities[entry]) {
+				// Rotates the left child up
+				int child = left[entry];
+				left[entry] = right[child];
+				right[child] = entry;
+				return child;
+			}
+		} else {
+			right[entry] = insert(right[entry], slot);
+			if (priorities[right[entry]] > priorities[entry]) {
+				// Rotates the right child up
+				int child = right[entry];
+				right[entry] = left[child];
+				left[child] = entry;
+				return child;
+			}
+		}
+		return entry;
+	}
+
+	// Deletes the entry with the given key from the subtree of the given
+	// entry, if it is there, and returns the root of the subtree
+	private int delete(int entry, long key) {
+		if (entry == NIL) {
+			return NIL;
+		}
+		if (key < keys[entry]) {
+			left[entry] = delete(left[entry], key);
+		} else if (key > keys[entry]) {
+			right[entry] = delete(right[entry], key);
+		} else {
+			int joined = join(left[entry], right[entry]);
+			releaseSlot(entry);
+			size--;
+			return joined;
+		}
+		return entry;
+	}
+
+	// Joins two subtrees, all of whose keys in the first are smaller than the
+	// keys in the second, and returns the root of the joined tree
+	private int join(int smaller, int larger) {
+		if (smaller == NIL) {
+			return larger;
+		}
+		if (larger == NIL) {
+			return smaller;
+		}
+		if (priorities[smaller] > priorities[larger]) {
+			right[smaller] = join(right[smaller], larger);
+			return smaller;
+		}
+		left[larger] = join(smaller, left[larger]);
+		return larger;
+	}
+
+	// Returns an unused slot, growing the arrays if all the slots are in use
+	private int obtainSlot() {
+		if (unused != NIL) {
+			int slot = unused;
+			unused = left[slot];
+			return slot;
+		}
+		if (slots == keys.length) {
+			int capacity = 2 * slots;
+			keys = java.util.Arrays.copyOf(keys, capacity);
+			nodes = java.util.Arrays.copyOf(nodes, capacity);
+			left = java.util.Arrays.copyOf(left, capacity);
+			right = java.util.Arrays.copyOf(right, capacity);
+			priorities = java.util.Arrays.copyOf(priorities, capacity);
+		}
+		return slots++;
+	}
+
+	// Returns the given slot to the unused ones, dropping its node
+	private void releaseSlot(int slot) {
+		nodes[slot] = null;
+		left[slot] = unused;
+		unused = slot;
+	}
+
+	// Generates the next priority, with a xorshift generator
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	// Orders blocks by length first, and then by base address
+	private static long key(int length, int baseAddress) {
+		return ((long) length << 32) | (baseAddress & 0xFFFFFFFFL);
+	}
+}
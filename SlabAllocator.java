@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves fixed-size blocks (slots) from a single region, which is carved out
+ * of another allocator with one malloc. The free slots are kept in a lock-free
+ * stack (a Treiber stack): malloc pops a slot and free pushes it back, each
+ * with a single compare-and-set, so any number of threads can allocate and
+ * free slots without locks and without scanning.
+ * <p>
+ * The stack links slots by index, through an array, and its head packs the
+ * index of the top slot with a tag that is incremented by every operation.
+ * A pop that read a head which has since been popped and pushed back (the ABA
+ * problem) therefore fails its compare-and-set, and retries.
+ * <p>
+ * Freeing a slot twice is not detected, and corrupts the stack.
+ */
+public class SlabAllocator implements Allocator {
+
+	private static final int EMPTY = -1; // the index that marks the end of the stack
+
+	private Allocator backing;     // the allocator that holds the region
+	private int regionAddress;     // the base address of the region
+	private int slotSize;          // the length of each slot, in words
+	private int slotCount;         // the number of slots in the region
+	private AtomicIntegerArray next; // the index of the slot below each free slot
+	private AtomicLong head;       // the tag (high 32 bits) and the index of the
+	                               // top free slot (low 32 bits)
+
+	/**
+	 * Constructs a new slab allocator, allocating its region from the given
+	 * allocator. Initially, all the slots are free.
+	 *
+	 * @param backing
+	 *                  the allocator from which the region is allocated
+	 * @param slotSize
+	 *                  the length of each slot, in words
+	 * @param slotCount
+	 *                  the number of slots
+	 * @throws IllegalArgumentException
+	 *                                  if the size or the count is not positive
+	 * @throws IllegalStateException
+	 *                                  if the region cannot be allocated
+	 */
+	public SlabAllocator(Allocator backing, int slotSize, int slotCount) {
+		if (slotSize < 1 || slotCount < 1 || (long) slotSize * slotCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("slot size and count must be positive");
+		}
+		this.regionAddress = backing.malloc(slotSize * slotCount);
+		if (regionAddress == -1) {
+			throw new IllegalStateException("unable to allocate the slab region");
+		}
+		this.backing = backing;
+		this.slotSize = slotSize;
+		this.slotCount = slotCount;
+		this.next = new AtomicIntegerArray(slotCount);
+		for (int i = 0; i < slotCount - 1; i++) {
+			next.set(i, i + 1);
+		}
+		next.set(slotCount - 1, EMPTY);
+		this.head = new AtomicLong(pack(0, 0));
+	}
+
+	/**
+	 * Gets the length of each slot.
+	 *
+	 * @return the slot size, in words
+	 */
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+	/**
+	 * Allocates a slot.
+	 *
+	 * @return the base address of the allocated slot, or -1 if all the slots are
+	 *         allocated
+	 */
+	public int malloc() {
+		while (true) {
+			long top = head.get();
+			int index = (int) top;
+			if (index == EMPTY) {
+				return -1;
+			}
+			long below = pack(tag(top) + 1, next.get(index));
+			if (head.compareAndSet(top, below)) {
+				return regionAddress + index * slotSize;
+			}
+		}
+	}
+
+	/**
+	 * Allocates a slot, if the requested length fits in a slot.
+	 *
+	 * @param length
+	 *               the requested length, in words
+	 * @return the base address of the allocated slot, or -1 if the length is
+	 *         longer than a slot, or all the slots are allocated
+	 */
+	public int malloc(int length) {
+		return (length <= slotSize) ? malloc() : -1;
+	}
+
+	/**
+	 * Frees the slot whose base address equals the given address.
+	 *
+	 * @param address
+	 *                the base address of the slot to be freed
+	 * @throws IllegalArgumentException
+	 *                                  if the address is not the base address of
+	 *                                  a slot
+	 */
+	public void free(int address) {
+		int offset = address - regionAddress;
+		if (offset < 0 || offset >= slotCount * slotSize || offset % slotSize != 0) {
+			throw new IllegalArgumentException("address must be the base address of a slot");
+		}
+		int index = offset / slotSize;
+		while (true) {
+			long top = head.get();
+			next.set(index, (int) top);
+			if (head.compareAndSet(top, pack(tag(top) + 1, index))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Does nothing, since all the slots have the same length.
+	 */
+	public void defrag() {
+	}
+
+	/**
+	 * Frees the region of this slab allocator in the allocator it was taken
+	 * from. The slab allocator must not be used afterwards.
+	 */
+	public void release() {
+		backing.free(regionAddress);
+	}
+
+	// Packs a tag and a slot index into a stack head
+	private static long pack(int tag, int index) {
+		return ((long) tag << 32) | (index & 0xFFFFFFFFL);
+	}
+
+	// Returns the tag of a stack head
+	private static int tag(long top) {
+		return (int) (top >>> 32);
+	}
+}
@@ -12,6 +12,40 @@ public class TestMemorySpace {
         testFree();
         testDefrag();
         testComplexScenario();
+        testBestFit();
+        testSegregatedFit();
+        testNextFit();
+        testWorstFit();
+        testNextFitCursor();
+        testFreeManyBlocks();
+        testDefragManyBlocks();
+        testEagerCoalescing();
+        testTraceSink();
+        testWriteTo();
+        testBuddyAllocation();
+        testConcurrentStripes();
+        testThreadCache();
+        testSlabAllocator();
+        testOffHeapWords();
+        testMappedPersistence();
+        testCompaction();
+        testDefragOnFailure();
+        testIncrementalDefrag();
+        testDefragBetweenSteps();
+        testStatistics();
+        testTraceReplay();
+        testArrayMemorySpace();
+        testPackedBlocks();
+        testNodePool();
+        testForeignNodeRemoval();
+        testCrossThreadFree();
+        testMappedSyncCrash();
+        testDefragAfterRestore();
+        testTraceAfterCompact();
+        testMemorySpaceGarbage();
+        testLargeBuddySpace();
+        testCacheHandOff();
+        testBoundedDefragOnFailure();
 
         System.out.println("All tests completed successfully!");
     }
@@ -98,6 +132,988 @@ public class TestMemorySpace {
         assertString(expected, memory.toString(), "Complex scenario state");
     }
 
+    private static void testBestFit() {
+        MemorySpace memory = new MemorySpace(100, new BestFitPolicy());
+        int addr1 = memory.malloc(30); // Allocates at address 0
+        memory.malloc(10); // Allocates at address 30
+        int addr3 = memory.malloc(15); // Allocates at address 40
+        memory.malloc(10); // Allocates at address 55
+
+        memory.free(addr1); // Frees a 30 words block at address 0
+        memory.free(addr3); // Frees a 15 words block at address 40
+        int addr5 = memory.malloc(12); // Smallest fit is the block at address 40
+
+        assertEqual(40, addr5, "Best fit allocation");
+        assertEqual(-1, memory.malloc(40), "Best fit allocation failure");
+
+        String expected = "(65 , 35) (0 , 30) (52 , 3)\n(30 , 10) (55 , 10) (40 , 12)\n";
+        assertString(expected, memory.toString(), "Best fit state");
+    }
+
+    private static void testSegregatedFit() {
+        MemorySpace memory = new MemorySpace(100, new SegregatedFitPolicy());
+        int addr1 = memory.malloc(40); // Allocates at address 0
+        memory.malloc(10); // Allocates at address 40
+        int addr3 = memory.malloc(5); // Allocates at address 50
+        memory.malloc(10); // Allocates at address 55
+
+        memory.free(addr1); // Frees a 40 words block, binned with sizes 32..63
+        memory.free(addr3); // Frees a 5 words block, binned with sizes 4..7
+        int addr5 = memory.malloc(4); // Served from the 4..7 bin
+        int addr6 = memory.malloc(8); // The 8..15 and 16..31 bins are empty
+
+        assertEqual(50, addr5, "Segregated fit from the request's bin");
+        assertEqual(65, addr6, "Segregated fit from a larger bin");
+
+        String expected = "(73 , 27) (0 , 40) (54 , 1)\n(40 , 10) (55 , 10) (50 , 4) (65 , 8)\n";
+        assertString(expected, memory.toString(), "Segregated fit state");
+    }
+
+    private static void testNextFit() {
+        MemorySpace memory = new MemorySpace(100, new NextFitPolicy());
+        int addr1 = memory.malloc(10); // Allocates at address 0
+        memory.malloc(10); // Allocates at address 10
+        memory.free(addr1); // The free list is now (20 , 80) (0 , 10)
+
+        int addr3 = memory.malloc(5); // Resumes from the (20 , 80) block
+        int addr4 = memory.malloc(80); // Wraps around, and fails
+        int addr5 = memory.malloc(10); // Continues from the (25 , 75) block
+
+        assertEqual(20, addr3, "Next fit allocation");
+        assertEqual(-1, addr4, "Next fit allocation failure");
+        assertEqual(25, addr5, "Next fit allocation from the cursor");
+
+        String expected = "(35 , 65) (0 , 10)\n(10 , 10) (20 , 5) (25 , 10)\n";
+        assertString(expected, memory.toString(), "Next fit state");
+    }
+
+    private static void testNextFitCursor() {
+        MemorySpace memory = new MemorySpace(100, new NextFitPolicy());
+        for (int i = 0; i < 10; i++) {
+            memory.malloc(10);
+        }
+        for (int i = 0; i < 10; i += 2) {
+            memory.free(i * 10); // Frees the blocks at 0, 20, 40, 60 and 80
+        }
+        assertEqual(0, memory.malloc(5), "Next fit from the head");
+        // Allocates the block at 20 exactly, and moves the cursor to the one at 40
+        assertEqual(20, memory.malloc(10), "Next fit exact allocation");
+
+        memory.free(30);
+        memory.defrag(); // Merges the block at 40, under the cursor, into the one at 30
+        assertEqual(60, memory.malloc(10), "Next fit after defrag");
+        assertEqual(80, memory.malloc(10), "Next fit continues after defrag");
+        assertEqual(30, memory.malloc(20), "Next fit reaches the merged block");
+        assertEqual(5, memory.malloc(5), "Next fit wraps around");
+        assertEqual(-1, memory.malloc(1), "Next fit when memory is full");
+
+        // Removes the cursor's block after the block that follows it, as defrag may
+        LinkedList list = new LinkedList();
+        list.addLast(new MemoryBlock(0, 5));
+        list.addLast(new MemoryBlock(50, 10));
+        list.addLast(new MemoryBlock(30, 10));
+        NextFitPolicy policy = new NextFitPolicy();
+        Node cursor = policy.find(list, 10);
+        Node following = cursor.next;
+        policy.remove(following);
+        policy.remove(cursor);
+        list.remove(following);
+        list.remove(cursor);
+        assertEqual(0, policy.find(list, 5).block.baseAddress, "Next fit after losing the cursor");
+    }
+
+    private static void testWorstFit() {
+        MemorySpace memory = new MemorySpace(100, new WorstFitPolicy());
+        int addr1 = memory.malloc(30); // Allocates at address 0
+        memory.malloc(10); // Allocates at address 30
+        memory.free(addr1); // The free list is now (40 , 60) (0 , 30)
+
+        int addr3 = memory.malloc(20); // Largest block is at address 40
+        int addr4 = memory.malloc(30); // Largest blocks are (60 , 40) and (0 , 30)
+        int addr5 = memory.malloc(31); // No block is long enough
+
+        assertEqual(40, addr3, "Worst fit allocation");
+        assertEqual(60, addr4, "Worst fit allocation from the largest block");
+        assertEqual(-1, addr5, "Worst fit allocation failure");
+    }
+
+    private static void testFreeManyBlocks() {
+        int count = 20000;
+        MemorySpace memory = new MemorySpace(count * 3);
+        for (int i = 0; i < count; i++) {
+            assertEqual(i * 3, memory.malloc(3), "Allocation " + i);
+        }
+        for (int i = 0; i < count; i += 2) {
+            memory.free(i * 3);
+        }
+        memory.free(0); // Address 0 is already free, so nothing happens
+
+        for (int i = 0; i < count; i += 2) {
+            assertEqual(i * 3, memory.malloc(3), "Reallocation " + i);
+        }
+        assertEqual(-1, memory.malloc(3), "Allocation when memory is full");
+    }
+
+    private static void testDefragManyBlocks() {
+        int count = 1000;
+        MemorySpace memory = new MemorySpace(count * 2 + 10);
+        for (int i = 0; i < count; i++) {
+            memory.malloc(2);
+        }
+        // Frees the blocks in an order unrelated to their addresses
+        for (int i = 0; i < count; i++) {
+            memory.free(((i * 7919) % count) * 2);
+        }
+        memory.defrag();
+
+        String expected = "(0 , " + (count * 2 + 10) + ")\n";
+        assertString(expected, memory.toString(), "Defrag of many scattered blocks");
+    }
+
+    private static void testEagerCoalescing() {
+        MemorySpace memory = new MemorySpace(100);
+        memory.setEagerCoalescing(true);
+        int addr1 = memory.malloc(20);
+        int addr2 = memory.malloc(20);
+        int addr3 = memory.malloc(20);
+        memory.malloc(20);
+
+        memory.free(addr1); // No free neighbours
+        memory.free(addr3); // No free neighbours
+        assertString("(0 , 20) (40 , 20) (80 , 20)\n(20 , 20) (60 , 20)\n", memory.toString(),
+                "Eager coalescing without neighbours");
+
+        memory.free(addr2); // Merges with the blocks before and after it
+        assertString("(0 , 60) (80 , 20)\n(60 , 20)\n", memory.toString(),
+                "Eager coalescing with both neighbours");
+
+        memory.free(60); // Merges with the blocks before and after it
+        assertString("(0 , 100)\n\n", memory.toString(), "Eager coalescing into one block");
+        assertEqual(0, memory.malloc(100), "Allocation of the coalesced block");
+    }
+
+    private static void testTraceSink() {
+        StringBuilder events = new StringBuilder();
+        TraceSink recorder = new TraceSink() {
+            public void malloc(int length, int address) {
+                events.append("malloc " + length + " " + address + ";");
+            }
+
+            public void free(int address) {
+                events.append("free " + address + ";");
+            }
+
+            public void defrag() {
+                events.append("defrag;");
+            }
+
+            public void relocate(int from, int to) {
+                events.append("relocate " + from + " " + to + ";");
+            }
+        };
+        MemorySpace memory = new MemorySpace(100);
+        memory.malloc(10); // Not traced
+        memory.setTraceSink(recorder);
+        int addr = memory.malloc(20);
+        memory.malloc(200);
+        memory.free(addr);
+        memory.defrag();
+        assertString("malloc 20 10;malloc 200 -1;free 10;defrag;", events.toString(), "Traced events");
+
+        events.setLength(0);
+        memory.setTraceSink(new SampledTraceSink(recorder, 2));
+        for (int i = 0; i < 4; i++) {
+            memory.malloc(1);
+        }
+        assertString("malloc 1 10;malloc 1 12;", events.toString(), "Sampled events");
+    }
+
+    private static void testWriteTo() {
+        MemorySpace memory = new MemorySpace(100);
+        memory.malloc(20);
+        memory.malloc(30);
+        StringBuilder out = new StringBuilder();
+        try {
+            memory.writeTo(out);
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Dump failed: " + e.getMessage());
+        }
+        if (!out.toString().equals("(50 , 50) \n(0 , 20) (20 , 30) ")
+                || !out.toString().equals(memory.toString())) {
+            throw new AssertionError("Dump: Expected the text of toString but got " + out);
+        }
+    }
+
+    private static void testBuddyAllocation() {
+        BuddyMemorySpace memory = new BuddyMemorySpace(96); // Blocks of 64 and 32 words
+        int addr1 = memory.malloc(10); // Rounded up to 16, splits the 32 words block
+        int addr2 = memory.malloc(16); // Takes the other half of the 32 words block
+        int addr3 = memory.malloc(32); // Splits the 64 words block
+
+        assertEqual(64, addr1, "First buddy allocation");
+        assertEqual(80, addr2, "Second buddy allocation");
+        assertEqual(0, addr3, "Third buddy allocation");
+        assertString("(32 , 32)\n(0 , 32) (64 , 16) (80 , 16)\n", memory.toString(), "Buddy split state");
+        assertEqual(6, (int) (memory.getAllocatedWords() - memory.getRequestedWords()), "Wasted words");
+
+        memory.free(addr1);
+        memory.free(addr2); // Merges with its buddy at address 64
+        memory.free(addr3); // Merges with its buddy at address 32
+        assertString("(64 , 32) (0 , 64)\n\n", memory.toString(), "Buddy merge state");
+        assertEqual(0, memory.malloc(64), "Allocation of the merged block");
+        assertEqual(-1, memory.malloc(33), "Buddy allocation failure");
+    }
+
+    private static void testConcurrentStripes() {
+        ConcurrentMemorySpace memory = new ConcurrentMemorySpace(4000, 4);
+        int threadCount = 4;
+        int blocksPerThread = 100;
+        int[][] addresses = new int[threadCount][blocksPerThread];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int[] mine = addresses[t];
+            threads[t] = new Thread(() -> {
+                for (int round = 0; round < 50; round++) {
+                    for (int i = 0; i < mine.length; i++) {
+                        mine[i] = memory.malloc(10);
+                    }
+                    if (round < 49) {
+                        for (int i = 0; i < mine.length; i++) {
+                            memory.free(mine[i]);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError("Interrupted");
+            }
+        }
+        // The memory is now exactly full, and no two blocks overlap
+        boolean[] used = new boolean[4000];
+        for (int[] mine : addresses) {
+            for (int address : mine) {
+                for (int word = address; word < address + 10; word++) {
+                    if (address < 0 || used[word]) {
+                        throw new AssertionError("Concurrent allocation overlap at " + address);
+                    }
+                    used[word] = true;
+                }
+            }
+        }
+        assertEqual(-1, memory.malloc(1), "Concurrent allocation when memory is full");
+
+        // A single thread steals from the other stripes when its own is exhausted
+        ConcurrentMemorySpace small = new ConcurrentMemorySpace(100, 2);
+        int addr1 = small.malloc(50);
+        int addr2 = small.malloc(50);
+        assertEqual(50, Math.abs(addr1 - addr2), "Allocation stolen from another stripe");
+        small.free(addr2);
+        assertEqual(addr2, small.malloc(30), "Allocation after a free in another stripe");
+    }
+
+    private static void testThreadCache() {
+        MemorySpace space = new MemorySpace(1000);
+        int[] sharedCalls = new int[2]; // The number of malloc and free calls that reach the space
+        Allocator shared = new Allocator() {
+            public synchronized int malloc(int length) {
+                sharedCalls[0]++;
+                return space.malloc(length);
+            }
+
+            public synchronized void free(int address) {
+                sharedCalls[1]++;
+                space.free(address);
+            }
+
+            public synchronized void defrag() {
+                space.defrag();
+            }
+        };
+        ThreadCachingAllocator cache = new ThreadCachingAllocator(shared, 1000, 16, 2);
+        int addr1 = cache.malloc(8);
+        cache.free(addr1);
+        assertEqual(addr1, cache.malloc(8), "Allocation from the thread cache");
+        assertEqual(1, sharedCalls[0], "Shared allocations");
+        assertEqual(0, sharedCalls[1], "Shared frees");
+
+        int addr2 = cache.malloc(8);
+        int addr3 = cache.malloc(8);
+        cache.free(addr1);
+        cache.free(addr2);
+        cache.free(addr3); // The bin is full, so one block is flushed
+        assertEqual(1, sharedCalls[1], "Shared frees after the bin overflows");
+
+        cache.malloc(100); // Too long to be cached
+        assertEqual(4, sharedCalls[0], "Shared allocations of long blocks");
+
+        Thread thread = new Thread(cache.wrap(() -> cache.free(cache.malloc(4))));
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError("Interrupted");
+        }
+        assertEqual(2, sharedCalls[1], "Shared frees after the thread exits");
+
+        cache.flush();
+        assertEqual(4, sharedCalls[1], "Shared frees after flushing");
+        assertString("(128 , 872) (0 , 8) (124 , 4) (8 , 8) (16 , 8)\n(24 , 100)\n", space.toString(),
+                "State after flushing the thread cache");
+    }
+
+    private static void testSlabAllocator() {
+        MemorySpace space = new MemorySpace(100);
+        space.malloc(10);
+        SlabAllocator slab = new SlabAllocator(space, 8, 4); // A region of 32 words at address 10
+        assertEqual(10, slab.malloc(), "First slot");
+        assertEqual(18, slab.malloc(), "Second slot");
+        slab.free(10);
+        assertEqual(10, slab.malloc(), "Reuse of a freed slot");
+        assertEqual(26, slab.malloc(6), "Slot for a shorter block");
+        assertEqual(-1, slab.malloc(9), "Block longer than a slot");
+        assertEqual(34, slab.malloc(), "Last slot");
+        assertEqual(-1, slab.malloc(), "All slots allocated");
+        slab.release();
+        assertString("(42 , 58) (10 , 32)\n(0 , 10)\n", space.toString(), "State after releasing the slab");
+
+        // Threads pop and push slots concurrently; a slot is never held by two threads
+        SlabAllocator shared = new SlabAllocator(new MemorySpace(64), 1, 64);
+        java.util.concurrent.atomic.AtomicIntegerArray owners = new java.util.concurrent.atomic.AtomicIntegerArray(64);
+        boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                int[] held = new int[8];
+                for (int round = 0; round < 20000; round++) {
+                    for (int i = 0; i < held.length; i++) {
+                        held[i] = shared.malloc();
+                        if (held[i] == -1 || !owners.compareAndSet(held[i], 0, 1)) {
+                            failed[0] = true;
+                            return;
+                        }
+                    }
+                    for (int i = 0; i < held.length; i++) {
+                        owners.set(held[i], 0);
+                        shared.free(held[i]);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError("Interrupted");
+            }
+        }
+        if (failed[0]) {
+            throw new AssertionError("Slab slot allocated twice");
+        }
+    }
+
+    private static void testOffHeapWords() {
+        OffHeapMemorySpace memory = new OffHeapMemorySpace(100);
+        int addr1 = memory.malloc(10);
+        int addr2 = memory.malloc(10);
+        for (int i = 0; i < 10; i++) {
+            memory.writeWord(addr1 + i, i * i);
+        }
+        assertEqual(81, memory.readWord(addr1 + 9), "Written word");
+
+        memory.copyWords(addr1, addr2, 10);
+        int[] words = new int[10];
+        memory.readWords(addr2, words, 0, 10);
+        assertEqual(49, words[7], "Copied word");
+
+        memory.copyWords(addr1, addr1 + 2, 8); // Overlapping copy
+        assertEqual(0, memory.readWord(addr1 + 2), "First word of an overlapping copy");
+        assertEqual(36, memory.readWord(addr1 + 8), "Last word of an overlapping copy");
+
+        try {
+            memory.readWord(100);
+            throw new AssertionError("Read outside the memory space: Expected an exception");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    private static void testMappedPersistence() {
+        java.nio.file.Path file = null;
+        try {
+            file = java.nio.file.Files.createTempFile("memory", ".mms");
+            java.nio.file.Files.delete(file);
+            MappedMemorySpace memory = MappedMemorySpace.open(file, 100);
+            int addr1 = memory.malloc(20);
+            int addr2 = memory.malloc(30);
+            memory.free(addr1);
+            memory.writeWord(addr2 + 5, 42);
+            String state = memory.toString();
+            memory.close();
+
+            MappedMemorySpace reopened = MappedMemorySpace.open(file, 100);
+            assertString(state, reopened.toString(), "Restored state");
+            assertEqual(42, reopened.readWord(addr2 + 5), "Restored word");
+            assertEqual(50, reopened.malloc(50), "Allocation after restoring");
+            reopened.free(addr2);
+            reopened.close();
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Persistence failed: " + e.getMessage());
+        } finally {
+            try {
+                if (file != null) {
+                    java.nio.file.Files.deleteIfExists(file);
+                }
+            } catch (java.io.IOException e) {
+                // The temporary file is left behind
+            }
+        }
+    }
+
+    private static void testCompaction() {
+        OffHeapMemorySpace memory = new OffHeapMemorySpace(100);
+        int handle1 = memory.mallocHandle(20); // At address 0
+        int handle2 = memory.mallocHandle(20); // At address 20
+        int handle3 = memory.mallocHandle(20); // At address 40
+        memory.malloc(20); // At address 60
+        memory.writeWord(memory.resolve(handle3) + 1, 7);
+        memory.freeHandle(handle1);
+        memory.free(60);
+        assertEqual(-1, memory.malloc(60), "Allocation before compacting");
+
+        memory.compact();
+        assertEqual(0, memory.resolve(handle2), "Handle of a moved block");
+        assertEqual(20, memory.resolve(handle3), "Handle of another moved block");
+        assertEqual(7, memory.readWord(memory.resolve(handle3) + 1), "Word of a moved block");
+        assertString("(40 , 60)\n(0 , 20) (20 , 20)\n", memory.toString(), "Compacted state");
+        assertEqual(40, memory.malloc(60), "Allocation after compacting");
+
+        memory.freeHandle(handle2);
+        int handle4 = memory.mallocHandle(5); // Reuses the most recently released handle
+        assertEqual(handle2, handle4, "Handle reuse");
+        assertEqual(0, memory.resolve(handle4), "Address of a reused handle");
+    }
+
+    private static void testDefragOnFailure() {
+        MemorySpace memory = new MemorySpace(100);
+        for (int i = 0; i < 5; i++) {
+            memory.malloc(20);
+        }
+        memory.free(0);
+        memory.free(20);
+        memory.free(40);
+        assertEqual(-1, memory.malloc(50), "Allocation without defrag-on-failure");
+
+        memory.setDefragOnFailure(1); // The freeList holds 3 blocks, so one step merges two
+        assertEqual(-1, memory.malloc(50), "Allocation over the defrag budget");
+        assertEqual(1, (int) memory.getRetryOverBudgetCount(), "Bounded defrags run by malloc");
+
+        memory.setDefragOnFailure(10);
+        assertEqual(0, memory.malloc(50), "Allocation after defrag-on-failure");
+        assertEqual(-1, memory.malloc(50), "Allocation when nothing can be merged");
+        assertEqual(1, (int) memory.getRetryDefragCount(), "Defrags run by malloc");
+        assertEqual(1, (int) memory.getRetrySuccessCount(), "Allocations saved by defrag");
+    }
+
+    private static void testIncrementalDefrag() {
+        MemorySpace memory = new MemorySpace(100);
+        for (int i = 0; i < 5; i++) {
+            memory.malloc(20);
+        }
+        for (int i = 0; i < 5; i++) {
+            memory.free(20 * i);
+        }
+        assertEqual(2, memory.defragStep(2), "Merges in a bounded step");
+        assertEqual(-1, memory.malloc(100), "Allocation before all the steps ran");
+        assertEqual(2, memory.defragStep(10), "Merges in the remaining steps");
+        assertEqual(0, memory.malloc(100), "Allocation after all the steps ran");
+
+        memory = new MemorySpace(100);
+        memory.setIncrementalDefrag(1);
+        for (int i = 0; i < 4; i++) {
+            memory.malloc(25);
+        }
+        memory.free(0);
+        memory.free(25);
+        memory.free(50);
+        assertEqual(0, memory.malloc(75), "Allocation after piggybacked steps");
+
+        ConcurrentMemorySpace concurrent = new ConcurrentMemorySpace(100, 2);
+        int first = concurrent.malloc(25);
+        int second = concurrent.malloc(25);
+        concurrent.free(first);
+        concurrent.free(second);
+        assertEqual(1, concurrent.defragStep(10), "Merges across the stripes");
+        assertEqual(first, concurrent.malloc(50), "Allocation after a concurrent step");
+    }
+
+    private static void testDefragBetweenSteps() {
+        MemorySpace memory = new MemorySpace(100);
+        memory.malloc(5);  // At address 0
+        memory.malloc(5);  // At address 5
+        memory.malloc(10); // At address 10
+        memory.malloc(10); // At address 20
+        memory.malloc(70); // At address 30
+        memory.free(30);
+        memory.free(10);
+        memory.free(5);
+        memory.free(0);
+        assertEqual(0, memory.defragStep(1), "Merges before defrag"); // Moves onto (10 , 10)
+        memory.defrag(); // Absorbs (5 , 5) and (10 , 10) into (0 , 20)
+        memory.malloc(70);
+        memory.malloc(4);
+        memory.free(30);
+        assertEqual(0, memory.defragStep(1), "Merges after defrag");
+        assertString("(4 , 16) (30 , 70)\n(20 , 10) (0 , 4)\n", memory.toString(), "State after steps around defrag");
+        assertEqual(4, memory.malloc(16), "Allocation after steps around defrag");
+    }
+
+    private static void testStatistics() {
+        MemorySpace memory = new MemorySpace(100);
+        assertEqual(100, memory.getLargestFreeBlock(), "Largest free block of an empty space");
+        for (int i = 0; i < 5; i++) {
+            memory.malloc(20);
+        }
+        memory.malloc(10);
+        memory.free(20);
+        memory.free(60);
+        memory.free(50); // Not allocated
+        assertEqual(6, (int) memory.getMallocCount(), "Malloc calls");
+        assertEqual(1, (int) memory.getMallocFailureCount(), "Failed malloc calls");
+        assertEqual(2, (int) memory.getFreeCount(), "Freed blocks");
+        assertEqual(60, memory.getWordsInUse(), "Words in use");
+        assertEqual(2, memory.getFreeBlockCount(), "Free blocks");
+        assertEqual(20, memory.getLargestFreeBlock(), "Largest free block");
+        assertEqual(50, (int) Math.round(100 * memory.getExternalFragmentation()), "External fragmentation");
+
+        memory.malloc(20);
+        memory.malloc(20);
+        assertEqual(0, memory.getLargestFreeBlock(), "Largest free block of a full space");
+        assertEqual(0, (int) Math.round(100 * memory.getExternalFragmentation()), "External fragmentation of a full space");
+        memory.free(0);
+        memory.free(20);
+        memory.defrag();
+        assertEqual(40, memory.getLargestFreeBlock(), "Largest free block after defrag");
+        assertEqual(1, memory.getFreeBlockCount(), "Free blocks after defrag");
+    }
+
+    private static void testTraceReplay() {
+        java.nio.file.Path file = null;
+        try {
+            file = java.nio.file.Files.createTempFile("memory", ".trace");
+            MemorySpace memory = new MemorySpace(100);
+            BinaryTraceRecorder recorder = new BinaryTraceRecorder(file);
+            memory.setTraceSink(recorder);
+            int addr1 = memory.malloc(20);
+            int addr2 = memory.malloc(30);
+            memory.malloc(60); // Fails
+            memory.free(addr1);
+            memory.free(99); // Not allocated, so not recorded
+            memory.malloc(10);
+            memory.free(addr2);
+            memory.defrag();
+            recorder.close();
+
+            TraceReplay replay = TraceReplay.load(file);
+            assertEqual(7, replay.getEventCount(), "Recorded events");
+            MemorySpace copy = new MemorySpace(100);
+            assertEqual(1, replay.run(copy), "Failed allocations in the replay");
+            assertString(memory.toString(), copy.toString(), "Replayed state");
+
+            BuddyMemorySpace buddy = new BuddyMemorySpace(32);
+            assertEqual(2, replay.run(buddy), "Failed allocations in the buddy replay");
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Trace replay failed: " + e.getMessage());
+        } finally {
+            try {
+                if (file != null) {
+                    java.nio.file.Files.deleteIfExists(file);
+                }
+            } catch (java.io.IOException e) {
+                // The temporary file is left behind
+            }
+        }
+    }
+
+    private static void testArrayMemorySpace() {
+        ArrayMemorySpace memory = new ArrayMemorySpace(100);
+        int addr1 = memory.malloc(20);
+        int addr2 = memory.malloc(30);
+        memory.malloc(50);
+        memory.free(addr1);
+        memory.free(addr2);
+        assertString("(0 , 20) (20 , 30)\n(50 , 50)\n", memory.toString(), "Array free list");
+        memory.defrag();
+        assertString("(0 , 50)\n(50 , 50)\n", memory.toString(), "Array free list after defrag");
+
+        // Runs the same random workload on a linked memory space
+        java.util.Random random = new java.util.Random(7);
+        ArrayMemorySpace array = new ArrayMemorySpace(1000);
+        MemorySpace linked = new MemorySpace(1000);
+        java.util.List<Integer> addresses = new java.util.ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                int length = 1 + random.nextInt(50);
+                int address = array.malloc(length);
+                assertEqual(linked.malloc(length), address, "Array allocation");
+                if (address != -1) {
+                    addresses.add(address);
+                }
+            } else if (op < 9 && !addresses.isEmpty()) {
+                int address = addresses.remove(random.nextInt(addresses.size()));
+                array.free(address);
+                linked.free(address);
+            } else if (op == 9) {
+                array.defrag();
+                linked.defrag();
+            }
+        }
+        assertString(linked.toString(), array.toString(), "Array state after a random workload");
+    }
+
+    private static void testPackedBlocks() {
+        long block = MemoryBlock.pack(123456, 789);
+        assertEqual(123456, MemoryBlock.baseOf(block), "Packed base address");
+        assertEqual(789, MemoryBlock.lengthOf(block), "Packed length");
+        assertEqual(-1, MemoryBlock.lengthOf(MemoryBlock.pack(5, -1)), "Packed negative length");
+
+        IntLongHashMap map = new IntLongHashMap();
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 16, block + i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertEqual(i, (int) (map.remove(i * 16, -1) - block), "Removed value");
+        }
+        assertEqual(50, map.size(), "Map size after removals");
+        assertEqual(-1, (int) map.get(0, -1), "Missing key");
+        assertEqual(1, (int) (map.get(16, -1) - block), "Remaining value");
+
+        // A steady stream of malloc and free allocates nothing
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            ArrayMemorySpace memory = new ArrayMemorySpace(1000);
+            int[] addresses = new int[10];
+            for (int round = 0; round < 2; round++) {
+                long before = counter.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < 100000; i++) {
+                    int slot = i % addresses.length;
+                    if (i >= addresses.length) {
+                        memory.free(addresses[slot]);
+                    }
+                    addresses[slot] = memory.malloc(1 + i % 7);
+                }
+                long allocated = counter.getCurrentThreadAllocatedBytes() - before;
+                if (round == 1 && allocated > 10000) {
+                    throw new AssertionError("Steady state allocated " + allocated + " bytes");
+                }
+                for (int address : addresses) {
+                    memory.free(address);
+                }
+                memory.defrag();
+            }
+        }
+    }
+
+    private static void testNodePool() {
+        NodePool pool = new NodePool(1);
+        LinkedList list = new LinkedList(pool);
+        list.addLast(pool.obtainBlock(0, 10));
+        Node node = list.getFirst();
+        MemoryBlock block = node.block;
+        list.remove(node);
+        pool.recycle(node);
+        pool.recycle(new Node(null)); // Beyond the capacity, so dropped
+        pool.recycleBlock(block);
+        assertEqual(1, pool.getNodeCount(), "Pooled nodes");
+        list.addLast(pool.obtainBlock(10, 5));
+        assertEqual(1, (list.getFirst() == node) ? 1 : 0, "Reused node");
+        assertEqual(1, (list.getFirst().block == block) ? 1 : 0, "Reused block");
+        assertString("(10 , 5)", list.toString(), "List with reused objects");
+
+        // Recycled objects do not leak into the lists of a memory space
+        MemorySpace memory = new MemorySpace(100, new NextFitPolicy());
+        memory.setEagerCoalescing(true);
+        int[] addresses = new int[10];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = memory.malloc(10);
+            }
+            for (int i = 0; i < addresses.length; i += 2) {
+                memory.free(addresses[i]);
+            }
+            for (int i = 1; i < addresses.length; i += 2) {
+                memory.free(addresses[i]);
+            }
+            assertString("(0 , 100)\n", memory.toString(), "Memory space after recycling");
+        }
+    }
+
+    private static void testForeignNodeRemoval() {
+        LinkedList list = new LinkedList();
+        LinkedList other = new LinkedList();
+        list.addLast(new MemoryBlock(0, 10));
+        list.addLast(new MemoryBlock(10, 10));
+        other.addLast(new MemoryBlock(20, 10));
+        other.addLast(new MemoryBlock(10, 10));
+        Node foreign = other.getLast();
+        assertEqual(0, list.contains(foreign) ? 1 : 0, "Node of another list");
+        list.remove(foreign); // Removes the equal block of this list
+        assertString("(0 , 10)", list.toString(), "List after removing an equal block");
+        assertString("(20 , 10) (10 , 10)", other.toString(), "Other list is unchanged");
+        assertEqual(2, other.getSize(), "Other list size");
+    }
+
+    private static void testCrossThreadFree() {
+        MemorySpace space = new MemorySpace(1000);
+        int[] sharedFrees = new int[1];
+        Allocator shared = new Allocator() {
+            public synchronized int malloc(int length) {
+                return space.malloc(length);
+            }
+
+            public synchronized void free(int address) {
+                sharedFrees[0]++;
+                space.free(address);
+            }
+
+            public synchronized void defrag() {
+                space.defrag();
+            }
+        };
+        ThreadCachingAllocator cache = new ThreadCachingAllocator(shared, 1000, 16, 4);
+        int address = cache.malloc(8);
+        Thread thread = new Thread(cache.wrap(() -> cache.free(address)));
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError("Interrupted");
+        }
+        assertEqual(1, sharedFrees[0], "Shared frees of a block freed by another thread");
+        int other = cache.malloc(8); // From the shared allocator, since nothing is cached
+        assertString("(16 , 984) (0 , 8)\n(8 , 8)\n", space.toString(), "Space after a cross-thread free");
+        cache.free(other);
+        assertEqual(1, sharedFrees[0], "Shared frees of a block freed by its thread");
+    }
+
+    private static void testMappedSyncCrash() {
+        java.nio.file.Path file = null;
+        try {
+            file = java.nio.file.Files.createTempFile("memory", ".mms");
+            java.nio.file.Files.delete(file);
+            MappedMemorySpace memory = MappedMemorySpace.open(file, 100);
+            int addr1 = memory.malloc(20);
+            memory.malloc(30);
+            memory.sync();
+            String synced = memory.toString();
+            byte[] header = java.util.Arrays.copyOf(java.nio.file.Files.readAllBytes(file), 24);
+
+            memory.free(addr1);
+            memory.malloc(5);
+            memory.malloc(10);
+            memory.close(); // Saves more blocks than the first sync
+
+            // Emulates a crash before the header was switched to the new blocks
+            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file,
+                    java.nio.file.StandardOpenOption.WRITE)) {
+                channel.write(java.nio.ByteBuffer.wrap(header), 0);
+            }
+            MappedMemorySpace reopened = MappedMemorySpace.open(file, 100);
+            assertString(synced, reopened.toString(), "State after a crash during sync");
+            reopened.close();
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Persistence failed: " + e.getMessage());
+        } finally {
+            try {
+                if (file != null) {
+                    java.nio.file.Files.deleteIfExists(file);
+                }
+            } catch (java.io.IOException e) {
+                // The temporary file is left behind
+            }
+        }
+    }
+
+    private static void testDefragAfterRestore() {
+        java.nio.file.Path file = null;
+        try {
+            file = java.nio.file.Files.createTempFile("memory", ".mms");
+            java.nio.file.Files.delete(file);
+            MappedMemorySpace memory = MappedMemorySpace.open(file, 100);
+            memory.malloc(10);
+            memory.malloc(10);
+            memory.malloc(80);
+            memory.free(0);
+            memory.free(10);
+            memory.close();
+
+            MappedMemorySpace reopened = MappedMemorySpace.open(file, 100);
+            assertString("(0 , 10) (10 , 10)\n(20 , 80)\n", reopened.toString(), "Restored free blocks");
+            reopened.setDefragOnFailure(100);
+            assertEqual(0, reopened.malloc(20), "Allocation after restoring adjacent free blocks");
+            assertEqual(1, (int) reopened.getRetryDefragCount(), "Defrags run by malloc after restoring");
+            reopened.close();
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Persistence failed: " + e.getMessage());
+        } finally {
+            try {
+                if (file != null) {
+                    java.nio.file.Files.deleteIfExists(file);
+                }
+            } catch (java.io.IOException e) {
+                // The temporary file is left behind
+            }
+        }
+    }
+
+    private static void testTraceAfterCompact() {
+        java.nio.file.Path file = null;
+        try {
+            file = java.nio.file.Files.createTempFile("memory", ".trace");
+            MemorySpace memory = new MemorySpace(100);
+            BinaryTraceRecorder recorder = new BinaryTraceRecorder(file);
+            memory.setTraceSink(recorder);
+            int addr = memory.malloc(10);
+            int handle = memory.mallocHandle(10);
+            memory.free(addr);
+            memory.compact(); // Moves the block of the handle to address 0
+            memory.freeHandle(handle);
+            recorder.close();
+
+            TraceReplay replay = TraceReplay.load(file);
+            assertEqual(4, replay.getEventCount(), "Recorded events around a compaction");
+            MemorySpace copy = new MemorySpace(100);
+            replay.run(copy);
+            assertEqual(0, copy.getWordsInUse(), "Words in use after replaying a compaction");
+        } catch (java.io.IOException e) {
+            throw new AssertionError("Trace replay failed: " + e.getMessage());
+        } finally {
+            try {
+                if (file != null) {
+                    java.nio.file.Files.deleteIfExists(file);
+                }
+            } catch (java.io.IOException e) {
+                // The temporary file is left behind
+            }
+        }
+    }
+
+    private static void testMemorySpaceGarbage() {
+        // A steady stream of malloc and free allocates nothing, once the pool
+        // and the indexes have grown to the working set
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+        MemorySpace eager = new MemorySpace(1000);
+        eager.setEagerCoalescing(true);
+        MemorySpace[] spaces = { new MemorySpace(1000), eager, new MemorySpace(1000, new BestFitPolicy()) };
+        for (MemorySpace memory : spaces) {
+            int[] addresses = new int[10];
+            for (int round = 0; round < 2; round++) {
+                long before = counter.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < 100000; i++) {
+                    int slot = i % addresses.length;
+                    if (i >= addresses.length) {
+                        memory.free(addresses[slot]);
+                    }
+                    addresses[slot] = memory.malloc(1 + i % 7);
+                }
+                long allocated = counter.getCurrentThreadAllocatedBytes() - before;
+                if (round == 1 && allocated > 10000) {
+                    throw new AssertionError("Steady state of a memory space allocated " + allocated + " bytes");
+                }
+                for (int address : addresses) {
+                    memory.free(address);
+                }
+                memory.defrag();
+            }
+        }
+    }
+
+    private static void testLargeBuddySpace() {
+        // The bookkeeping grows with the blocks, not with the managed words
+        BuddyMemorySpace memory = new BuddyMemorySpace(1 << 28);
+        int addr1 = memory.malloc(1000); // Splits the space down to 1024 words
+        int addr2 = memory.malloc(1 << 20);
+        assertEqual(0, addr1, "First allocation in a large buddy space");
+        assertEqual(1 << 20, addr2, "Second allocation in a large buddy space");
+        memory.free(addr1);
+        memory.free(addr2);
+        assertString("(0 , 268435456)\n\n", memory.toString(), "Large buddy space after merging");
+    }
+
+    private static void testCacheHandOff() {
+        MemorySpace space = new MemorySpace(8);
+        int[] sharedFrees = new int[1];
+        Allocator shared = new Allocator() {
+            public synchronized int malloc(int length) {
+                return space.malloc(length);
+            }
+
+            public synchronized void free(int address) {
+                sharedFrees[0]++;
+                space.free(address);
+            }
+
+            public synchronized void defrag() {
+                space.defrag();
+            }
+        };
+        ThreadCachingAllocator cache = new ThreadCachingAllocator(shared, 8, 8, 4);
+        int address = cache.malloc(8);
+        runThread(() -> cache.free(address)); // Cached by a thread that exits without flushing
+        int[] handedOff = new int[1];
+        runThread(() -> handedOff[0] = cache.malloc(4)); // Flushes the cache of the exited thread
+        assertEqual(1, sharedFrees[0], "Shared frees of the cache of an exited thread");
+        assertEqual(0, handedOff[0], "Allocation of the flushed block by another thread");
+
+        cache.free(handedOff[0]); // Cached as a block of 4 words, not 8
+        assertEqual(-1, cache.malloc(8), "Allocation while the block is cached");
+        assertEqual(0, cache.malloc(4), "Allocation of the handed off block");
+        assertString("(4 , 4)\n(0 , 4)\n", space.toString(), "Space after handing off a block");
+
+        runThread(() -> cache.free(cache.malloc(2)));
+        cache.flush();
+        assertEqual(2, sharedFrees[0], "Shared frees after flushing the caches of exited threads");
+    }
+
+    // Runs the given task in a new thread, and waits for the thread to exit
+    private static void runThread(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError("Interrupted");
+        }
+    }
+
+    private static void testBoundedDefragOnFailure() {
+        MemorySpace memory = new MemorySpace(100);
+        for (int i = 0; i < 10; i++) {
+            memory.malloc(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            memory.free(10 * i);
+        }
+        memory.setDefragOnFailure(3); // The freeList holds 10 blocks
+        assertEqual(-1, memory.malloc(100), "Allocation after the first bounded defrag");
+        assertEqual(-1, memory.malloc(100), "Allocation after the second bounded defrag");
+        assertEqual(0, memory.malloc(100), "Allocation after the third bounded defrag");
+        assertEqual(3, (int) memory.getRetryOverBudgetCount(), "Bounded defrags run by malloc");
+        assertEqual(0, (int) memory.getRetryDefragCount(), "Full defrags run by malloc");
+        assertEqual(1, (int) memory.getRetrySuccessCount(), "Allocations saved by bounded defrags");
+    }
+
     private static void assertEqual(int expected, int actual, String message) {
         if (expected != actual) {
             throw new AssertionError(message + ": Expected " + expected + " but got " + actual);
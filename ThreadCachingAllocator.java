@@ -0,0 +1,207 @@
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Caches recently freed small blocks per thread, in front of a thread-safe
+ * allocator, such as a concurrent memory space. A small block that a thread
+ * frees is kept in the thread's cache, in a bin of its exact length, and the
+ * next request of that length from the same thread is served from the bin,
+ * without touching the shared allocator or taking any of its locks.
+ * <p>
+ * A cached block remains allocated in the shared allocator. When a bin grows
+ * beyond its bound, half of it is flushed back to the shared allocator. A
+ * thread's cache is also flushed when the thread calls flush, which it should
+ * do before exiting; tasks wrapped with wrap do so automatically. The caches
+ * of the threads that exited without flushing are flushed by the next call to
+ * flush or defrag from any thread, and whenever a new thread starts using
+ * this allocator.
+ * <p>
+ * The length of each small block that is handed out is recorded in an array
+ * indexed by address, which all the threads share without locking. A block
+ * may thus be freed by any thread: its record is taken atomically by the
+ * free, and the block is cached by the freeing thread. A record is only ever
+ * present while its block is handed out, so a block is never cached under a
+ * stale length.
+ */
+public class ThreadCachingAllocator implements Allocator {
+
+	private Allocator shared;           // the thread-safe allocator behind the caches
+	private int maxCachedLength;        // the longest block that is cached
+	private int binCapacity;            // the most blocks a bin holds before flushing
+	private AtomicIntegerArray lengths; // the length of the small block handed out
+	                                    // at each address, or 0 if there is none
+	private ThreadLocal<Cache> caches;  // the cache of each thread
+	private ConcurrentLinkedQueue<Cache> registry; // the caches of all the threads
+
+	// The cache of one thread
+	private static class Cache {
+		int[][] bins;                // the cached addresses, by length
+		int[] counts;                // the number of addresses in each bin
+		WeakReference<Thread> owner; // the thread that uses the cache
+
+		// Checks if the owner of this cache has exited
+		boolean orphaned() {
+			Thread thread = owner.get();
+			return thread == null || !thread.isAlive();
+		}
+	}
+
+	/**
+	 * Constructs a new caching allocator in front of the given allocator.
+	 *
+	 * @param shared
+	 *                        the thread-safe allocator from which blocks are taken
+	 * @param maxSize
+	 *                        the size of the memory space of the shared allocator
+	 * @param maxCachedLength
+	 *                        the longest block (in words) that is cached
+	 * @param binCapacity
+	 *                        the most blocks of each length that a thread caches
+	 * @throws IllegalArgumentException
+	 *                                  if the size is negative, or the length or
+	 *                                  the capacity is not positive
+	 */
+	public ThreadCachingAllocator(Allocator shared, int maxSize, int maxCachedLength, int binCapacity) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("size must not be negative");
+		}
+		if (maxCachedLength < 1 || binCapacity < 1) {
+			throw new IllegalArgumentException("cached length and bin capacity must be positive");
+		}
+		this.shared = shared;
+		this.maxCachedLength = maxCachedLength;
+		this.binCapacity = binCapacity;
+		this.lengths = new AtomicIntegerArray(maxSize);
+		this.registry = new ConcurrentLinkedQueue<Cache>();
+		this.caches = ThreadLocal.withInitial(() -> {
+			Cache cache = new Cache();
+			cache.bins = new int[maxCachedLength + 1][binCapacity];
+			cache.counts = new int[maxCachedLength + 1];
+			cache.owner = new WeakReference<Thread>(Thread.currentThread());
+			flushOrphans();
+			registry.add(cache);
+			return cache;
+		});
+	}
+
+	/**
+	 * Allocates a memory block of a requested length (in words). A small block
+	 * is taken from the calling thread's cache if it holds one of the same
+	 * length, and otherwise from the shared allocator.
+	 *
+	 * @param length
+	 *               the length (in words) of the memory block that has to be
+	 *               allocated
+	 * @return the base address of the allocated block, or -1 if unable to allocate
+	 */
+	public int malloc(int length) {
+		if (length < 1 || length > maxCachedLength) {
+			return shared.malloc(length);
+		}
+		Cache cache = caches.get();
+		int address;
+		if (cache.counts[length] > 0) {
+			address = cache.bins[length][--cache.counts[length]];
+		} else {
+			address = shared.malloc(length);
+			if (address == -1) {
+				return -1;
+			}
+			if (address >= lengths.length()) {
+				// Outside the recorded addresses, so never cached
+				return address;
+			}
+		}
+		lengths.set(address, length);
+		return address;
+	}
+
+	/**
+	 * Frees the memory block whose base address equals the given address. A
+	 * small block is kept in the calling thread's cache, whichever thread
+	 * allocated it; other blocks are freed in the shared allocator right away.
+	 *
+	 * @param address
+	 *                the base address of the block to be freed
+	 */
+	public void free(int address) {
+		int length = (address >= 0 && address < lengths.length()) ? lengths.getAndSet(address, 0) : 0;
+		if (length == 0) {
+			shared.free(address);
+			return;
+		}
+		Cache cache = caches.get();
+		int[] bin = cache.bins[length];
+		int[] count = cache.counts;
+		if (count[length] == binCapacity) {
+			// Flushes the older half of the bin
+			int flushed = Math.max(binCapacity / 2, 1);
+			for (int i = 0; i < flushed; i++) {
+				shared.free(bin[i]);
+			}
+			System.arraycopy(bin, flushed, bin, 0, count[length] - flushed);
+			count[length] -= flushed;
+		}
+		bin[count[length]++] = address;
+	}
+
+	/**
+	 * Flushes the calling thread's cache, and the caches of the threads that
+	 * exited, and defrags the shared allocator. The blocks cached by other
+	 * running threads are not affected.
+	 */
+	public void defrag() {
+		flush();
+		shared.defrag();
+	}
+
+	/**
+	 * Frees all the blocks in the calling thread's cache in the shared
+	 * allocator, and also the blocks in the caches of the threads that exited
+	 * without flushing. A thread should call this method before it exits.
+	 */
+	public void flush() {
+		flush(caches.get());
+		flushOrphans();
+	}
+
+	/**
+	 * Wraps the given task, so that the thread that runs it flushes its cache
+	 * when the task ends, even if it fails.
+	 *
+	 * @param task
+	 *             the task to be wrapped
+	 * @return a task that runs the given one and then flushes the cache
+	 */
+	public Runnable wrap(Runnable task) {
+		return () -> {
+			try {
+				task.run();
+			} finally {
+				flush();
+			}
+		};
+	}
+
+	// Frees all the blocks in the given cache in the shared allocator
+	private void flush(Cache cache) {
+		for (int length = 1; length <= maxCachedLength; length++) {
+			for (int i = 0; i < cache.counts[length]; i++) {
+				shared.free(cache.bins[length][i]);
+			}
+			cache.counts[length] = 0;
+		}
+	}
+
+	// Flushes and unregisters the caches of the threads that exited. The exit
+	// of a thread happens before it is seen to be dead, so its cache is seen
+	// in full; only the thread that unregisters a cache flushes it.
+	private void flushOrphans() {
+		for (Cache cache : registry) {
+			if (cache.orphaned() && registry.remove(cache)) {
+				flush(cache);
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Replays a trace recorded by BinaryTraceRecorder against an allocator. The
+ * trace is decoded into arrays once, when it is loaded, so a replay only
+ * calls the allocator, and can be run repeatedly, against allocators of
+ * different configurations, to compare them on the same workload.
+ * <p>
+ * A free is replayed on the address that the allocator under test returned
+ * for the corresponding malloc. If that malloc failed in the replay, the free
+ * is skipped.
+ */
+public class TraceReplay {
+
+	private byte[] opcodes;   // the opcode of each event
+	private int[] operands;   // the length of each malloc, or the malloc distance
+	                          // of each free
+	private int eventCount;   // the number of events
+	private int mallocCount;  // the number of malloc events
+
+	// Constructs a replay of the given decoded events
+	private TraceReplay(byte[] opcodes, int[] operands, int eventCount, int mallocCount) {
+		this.opcodes = opcodes;
+		this.operands = operands;
+		this.eventCount = eventCount;
+		this.mallocCount = mallocCount;
+	}
+
+	/**
+	 * Loads a trace from the given file.
+	 *
+	 * @param file
+	 *             a file written by BinaryTraceRecorder
+	 * @return the replay of the trace
+	 * @throws IOException
+	 *                     if the file cannot be read, or is not a valid trace
+	 */
+	public static TraceReplay load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != BinaryTraceRecorder.MAGIC) {
+				throw new IOException("not a trace file: " + file);
+			}
+			byte[] opcodes = new byte[1024];
+			int[] operands = new int[1024];
+			int count = 0;
+			int mallocs = 0;
+			int opcode;
+			while ((opcode = in.read()) != -1) {
+				if (count == opcodes.length) {
+					opcodes = java.util.Arrays.copyOf(opcodes, 2 * count);
+					operands = java.util.Arrays.copyOf(operands, 2 * count);
+				}
+				if (opcode == BinaryTraceRecorder.MALLOC) {
+					operands[count] = readOperand(in);
+					mallocs++;
+				} else if (opcode == BinaryTraceRecorder.FREE) {
+					operands[count] = readOperand(in);
+					if (operands[count] < 1 || operands[count] > mallocs) {
+						throw new IOException("free of an unknown malloc in " + file);
+					}
+				} else if (opcode != BinaryTraceRecorder.DEFRAG) {
+					throw new IOException("unknown opcode " + opcode + " in " + file);
+				}
+				opcodes[count++] = (byte) opcode;
+			}
+			return new TraceReplay(opcodes, operands, count, mallocs);
+		}
+	}
+
+	/**
+	 * Gets the number of events in the trace.
+	 *
+	 * @return the number of events
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Runs the trace against the given allocator.
+	 *
+	 * @param allocator
+	 *                  the allocator under test
+	 * @return the number of malloc calls that failed in the replay
+	 */
+	public int run(Allocator allocator) {
+		int[] addresses = new int[mallocCount];
+		int mallocs = 0;
+		int failures = 0;
+		for (int i = 0; i < eventCount; i++) {
+			switch (opcodes[i]) {
+				case BinaryTraceRecorder.MALLOC:
+					int address = allocator.malloc(operands[i]);
+					if (address == -1) {
+						failures++;
+					}
+					addresses[mallocs++] = address;
+					break;
+				case BinaryTraceRecorder.FREE:
+					int freed = addresses[mallocs - operands[i]];
+					if (freed != -1) {
+						allocator.free(freed);
+					}
+					break;
+				default:
+					allocator.defrag();
+			}
+		}
+		return failures;
+	}
+
+	// Reads an operand written seven bits at a time
+	private static int readOperand(DataInputStream in) throws IOException {
+		int operand = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("truncated trace");
+			}
+			operand |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return operand;
+			}
+		}
+		throw new IOException("malformed operand in trace");
+	}
+}
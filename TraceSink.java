@@ -0,0 +1,43 @@
+/**
+ * Receives the allocation events of a memory space, for tracing and
+ * debugging. A memory space reports its events to the trace sink that is set
+ * on it; when no sink is set, tracing costs nothing.
+ */
+public interface TraceSink {
+
+	/**
+	 * Reports a call to malloc.
+	 * 
+	 * @param length
+	 *                the requested length, in words
+	 * @param address
+	 *                the base address of the allocated block, or -1 if the
+	 *                allocation failed
+	 */
+	void malloc(int length, int address);
+
+	/**
+	 * Reports a call to free.
+	 * 
+	 * @param address
+	 *                the address that was freed
+	 */
+	void free(int address);
+
+	/**
+	 * Reports a call to defrag.
+	 */
+	void defrag();
+
+	/**
+	 * Reports that compact moved an allocated block to a new base address.
+	 * The moves of a compaction are reported in increasing address order, so
+	 * a block is never moved to the address of a block that has yet to move.
+	 * 
+	 * @param from
+	 *             the old base address of the block
+	 * @param to
+	 *             the new base address of the block
+	 */
+	void relocate(int from, int to);
+}
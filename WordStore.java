@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Stores the words of a memory space in a byte buffer, which is usually a
+ * direct (off-heap) buffer, so that the garbage collector never scans or
+ * copies the stored data. Each word is an int, and is addressed by its index
+ * in the store.
+ */
+public class WordStore {
+
+	// The length of a word, in bytes
+	public static final int WORD_BYTES = Integer.BYTES;
+
+	// The length of the chunks in which overlapping ranges are copied
+	private static final int COPY_CHUNK = 1024;
+
+	private IntBuffer words; // a view of the buffer as words
+	private int size;        // the number of words in this store
+
+	/**
+	 * Constructs a new store of the given number of words, in a direct buffer
+	 * with the platform's native byte order. All the words are initially zero.
+	 *
+	 * @param size
+	 *             the number of words
+	 */
+	public WordStore(int size) {
+		this(ByteBuffer.allocateDirect(size * WORD_BYTES).order(ByteOrder.nativeOrder()));
+	}
+
+	/**
+	 * Constructs a new store over the remaining bytes of the given buffer, using
+	 * the buffer's byte order. Changes to the store are written to the buffer.
+	 *
+	 * @param bytes
+	 *              the buffer that holds the words
+	 */
+	public WordStore(ByteBuffer bytes) {
+		this.words = bytes.asIntBuffer();
+		this.size = words.capacity();
+	}
+
+	/**
+	 * Gets the number of words in this store.
+	 *
+	 * @return the size of this store
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Reads the word at the given address.
+	 *
+	 * @param address
+	 *                the address of the word
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the address is outside this store
+	 * @return the word
+	 */
+	public int readWord(int address) {
+		return words.get(address);
+	}
+
+	/**
+	 * Writes a word at the given address.
+	 *
+	 * @param address
+	 *                the address of the word
+	 * @param value
+	 *                the word to be written
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the address is outside this store
+	 */
+	public void writeWord(int address, int value) {
+		words.put(address, value);
+	}
+
+	/**
+	 * Reads consecutive words, starting at the given address, into an array.
+	 *
+	 * @param address
+	 *                the address of the first word
+	 * @param dst
+	 *                the array into which the words are read
+	 * @param offset
+	 *                the index in the array of the first word
+	 * @param length
+	 *                the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the range is outside this store or
+	 *                                   the array
+	 */
+	public void read(int address, int[] dst, int offset, int length) {
+		words.get(address, dst, offset, length);
+	}
+
+	/**
+	 * Writes consecutive words from an array, starting at the given address.
+	 *
+	 * @param address
+	 *                the address of the first word
+	 * @param src
+	 *                the array from which the words are written
+	 * @param offset
+	 *                the index in the array of the first word
+	 * @param length
+	 *                the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if the range is outside this store or
+	 *                                   the array
+	 */
+	public void write(int address, int[] src, int offset, int length) {
+		words.put(address, src, offset, length);
+	}
+
+	/**
+	 * Copies consecutive words from one address to another. The source and the
+	 * destination ranges may overlap.
+	 *
+	 * @param from
+	 *               the address of the first source word
+	 * @param to
+	 *               the address of the first destination word
+	 * @param length
+	 *               the number of words
+	 * @throws IndexOutOfBoundsException
+	 *                                   if a range is outside this store
+	 */
+	public void copy(int from, int to, int length) {
+		if (from < 0 || to < 0 || length < 0 || from > size - length || to > size - length) {
+			throw new IndexOutOfBoundsException("range must be within the store");
+		}
+		if (from == to || length == 0) {
+			return;
+		}
+		int[] chunk = new int[Math.min(length, COPY_CHUNK)];
+		if (to < from) {
+			// Copies forwards, so that no source word is overwritten before it is read
+			for (int done = 0; done < length; done += chunk.length) {
+				int count = Math.min(chunk.length, length - done);
+				words.get(from + done, chunk, 0, count);
+				words.put(to + done, chunk, 0, count);
+			}
+		} else {
+			// Copies backwards, for the same reason
+			for (int left = length; left > 0; left -= chunk.length) {
+				int count = Math.min(chunk.length, left);
+				words.get(from + left - count, chunk, 0, count);
+				words.put(to + left - count, chunk, 0, count);
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Allocates from the largest free block, as long as it is long enough. This
+ * leaves remainders that are as large as possible. The free nodes are kept in
+ * a size index, so the block is found in logarithmic time.
+ */
+public class WorstFitPolicy implements AllocationPolicy {
+
+	private SizeIndex index = new SizeIndex(); // the free nodes, ordered by length
+
+	@Override
+	public Node find(LinkedList freeList, int length) {
+		Node largest = index.largest();
+		return (largest != null && largest.block.length >= length) ? largest : null;
+	}
+
+	@Override
+	public void add(Node node) {
+		index.add(node);
+	}
+
+	@Override
+	public void remove(Node node) {
+		index.remove(node.block.length, node.block.baseAddress);
+	}
+
+	@Override
+	public void resize(Node node, int oldBaseAddress, int oldLength) {
+		index.remove(oldLength, oldBaseAddress);
+		index.add(node);
+	}
+}
@@ -0,0 +1,179 @@
+package memoryspace;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures add, getNode, remove and indexOf of LinkedList, with lists of one
+ * word blocks, from 10 to 1,000,000 blocks.
+ * <p>
+ * The lookups, getNode and indexOf, are measured one call at a time, at
+ * random positions of a list that is built once per trial. The add and remove
+ * benchmarks run a round per invocation: add appends size blocks to an empty
+ * list, and remove removes all the nodes of a full list, in random order; for
+ * them, the primary score is rounds per second, and the "operations" counter
+ * reports the single calls per second. Run with -prof gc for the allocation
+ * rates; for add and remove, gc.alloc.rate.norm is per round, and includes
+ * the allocations of the setup that rebuilds the list.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkedListBenchmark {
+
+	// The number of random positions that the lookups cycle through
+	private static final int QUERIES = 1024;
+
+	/**
+	 * Counts the single operations of the rounds.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Operations {
+		public long operations;
+	}
+
+	/**
+	 * An empty list, and size blocks to append to it.
+	 */
+	@State(Scope.Thread)
+	public static class EmptyList {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		MemoryBlock[] blocks;
+		LinkedList list;
+
+		@Setup(Level.Trial)
+		public void setUpTrial() {
+			blocks = new MemoryBlock[size];
+			for (int i = 0; i < size; i++) {
+				blocks[i] = new MemoryBlock(i, 1);
+			}
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			list = new LinkedList();
+		}
+	}
+
+	/**
+	 * A list of size blocks, and random positions in it.
+	 */
+	@State(Scope.Thread)
+	public static class FullList {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		LinkedList list;
+		int[] indexes;
+		MemoryBlock[] blocks;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			list = list(size);
+			Random random = new Random(size);
+			indexes = random.ints(QUERIES, 0, size).toArray();
+			blocks = new MemoryBlock[QUERIES];
+			for (int i = 0; i < QUERIES; i++) {
+				blocks[i] = list.getBlock(random.nextInt(size));
+			}
+		}
+
+		// Returns the next position to look up
+		int nextQuery() {
+			next = (next + 1) & (QUERIES - 1);
+			return next;
+		}
+	}
+
+	/**
+	 * A list of size blocks, and its nodes in random order.
+	 */
+	@State(Scope.Thread)
+	public static class ShuffledNodes {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		Random random;
+		LinkedList list;
+		Node[] nodes;
+
+		@Setup(Level.Trial)
+		public void setUpTrial() {
+			random = new Random(size);
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			list = list(size);
+			nodes = new Node[size];
+			ListIterator itr = list.iterator();
+			for (int i = 0; i < size; i++) {
+				nodes[i] = itr.current;
+				itr.next();
+			}
+			for (int i = size - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				Node node = nodes[i];
+				nodes[i] = nodes[j];
+				nodes[j] = node;
+			}
+		}
+	}
+
+	@Benchmark
+	public LinkedList add(EmptyList state, Operations operations) {
+		for (MemoryBlock block : state.blocks) {
+			state.list.addLast(block);
+		}
+		operations.operations += state.blocks.length;
+		return state.list;
+	}
+
+	@Benchmark
+	public Node getNode(FullList state) {
+		return state.list.getNode(state.indexes[state.nextQuery()]);
+	}
+
+	@Benchmark
+	public int indexOf(FullList state) {
+		return state.list.indexOf(state.blocks[state.nextQuery()]);
+	}
+
+	@Benchmark
+	public LinkedList remove(ShuffledNodes state, Operations operations) {
+		for (Node node : state.nodes) {
+			state.list.remove(node);
+		}
+		operations.operations += state.nodes.length;
+		return state.list;
+	}
+
+	// Returns a list of size one word blocks
+	static LinkedList list(int size) {
+		LinkedList list = new LinkedList();
+		for (int i = 0; i < size; i++) {
+			list.addLast(new MemoryBlock(i, 1));
+		}
+		return list;
+	}
+}
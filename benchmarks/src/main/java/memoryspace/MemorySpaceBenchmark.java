@@ -0,0 +1,159 @@
+package memoryspace;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures malloc, free and defrag of MemorySpace, with memory spaces of one
+ * word blocks, from 10 to 1,000,000 blocks.
+ * <p>
+ * Each invocation runs a round over a memory space that is built before it,
+ * outside the measured time: malloc allocates size blocks in an empty space,
+ * free frees size blocks in random order, and defrag merges size adjacent
+ * free blocks. The primary score is rounds per second; the "operations"
+ * counter reports the single mallocs and frees per second. Run with -prof gc
+ * for the allocation rates; gc.alloc.rate.norm is per round, and includes
+ * the allocations of the setup that rebuilds the memory space.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemorySpaceBenchmark {
+
+	/**
+	 * Counts the single operations of the rounds.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Operations {
+		public long operations;
+	}
+
+	/**
+	 * An empty memory space of size words.
+	 */
+	@State(Scope.Thread)
+	public static class EmptySpace {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		MemorySpace memory;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			memory = new MemorySpace(size);
+		}
+	}
+
+	/**
+	 * A memory space filled with size one word blocks, and their addresses in
+	 * random order.
+	 */
+	@State(Scope.Thread)
+	public static class FullSpace {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		Random random;
+		MemorySpace memory;
+		int[] addresses;
+
+		@Setup(Level.Trial)
+		public void setUpTrial() {
+			random = new Random(size);
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			memory = new MemorySpace(size);
+			addresses = fill(memory, size);
+			shuffle(addresses, random);
+		}
+	}
+
+	/**
+	 * A memory space of size one word free blocks, freed in random order.
+	 */
+	@State(Scope.Thread)
+	public static class FreedSpace {
+		@Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+		int size;
+
+		Random random;
+		MemorySpace memory;
+
+		@Setup(Level.Trial)
+		public void setUpTrial() {
+			random = new Random(size);
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			memory = new MemorySpace(size);
+			int[] addresses = fill(memory, size);
+			shuffle(addresses, random);
+			for (int address : addresses) {
+				memory.free(address);
+			}
+		}
+	}
+
+	@Benchmark
+	public void malloc(EmptySpace space, Operations operations, Blackhole blackhole) {
+		for (int i = 0; i < space.size; i++) {
+			blackhole.consume(space.memory.malloc(1));
+		}
+		operations.operations += space.size;
+	}
+
+	@Benchmark
+	public void free(FullSpace space, Operations operations) {
+		for (int address : space.addresses) {
+			space.memory.free(address);
+		}
+		operations.operations += space.addresses.length;
+	}
+
+	@Benchmark
+	public MemorySpace defrag(FreedSpace space) {
+		space.memory.defrag();
+		return space.memory;
+	}
+
+	// Returns the addresses of size blocks of one word, allocated in the given
+	// memory space
+	static int[] fill(MemorySpace memory, int size) {
+		int[] addresses = new int[size];
+		for (int i = 0; i < size; i++) {
+			addresses[i] = memory.malloc(1);
+		}
+		return addresses;
+	}
+
+	// Shuffles the given array
+	static void shuffle(int[] values, Random random) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+}